@@ -0,0 +1,33 @@
+package com.gr.jiang.spring.cloud;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 依次以 1/8/32 线程运行匹配的基准测试, 并开启 gc profiler 统计分配速率.
+ * <p>
+ * 参数: [benchmark 正则] [结果文件前缀]
+ */
+public class BenchmarkMain {
+
+    private static final int[] THREADS = {1, 8, 32};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        String result = args.length > 1 ? args[1] : "jmh-results.json";
+        for (int threads : THREADS) {
+            Options opt = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.replace(".json", "-t" + threads + ".json"))
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.gr.jiang.spring.cloud.aop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ICommonServiceAspect 的开销: 同一个 @Service 方法直接调用、经过空代理调用和经过计时切面调用的对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ICommonServiceAspectBenchmark {
+
+    @Service
+    public static class EchoService {
+        public String echo(String s) {
+            return s;
+        }
+    }
+
+    private EchoService plain;
+
+    private EchoService proxied;
+
+    private EchoService advised;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        plain = new EchoService();
+
+        ProxyFactory empty = new ProxyFactory(new EchoService());
+        empty.setProxyTargetClass(true);
+        proxied = (EchoService) empty.getProxy();
+
+        ProxyFactory factory = new ProxyFactory(new EchoService());
+        factory.setProxyTargetClass(true);
+        factory.addAdvisor(new ICommonServiceAspect());
+        advised = (EchoService) factory.getProxy();
+    }
+
+    @Benchmark
+    public String unadvised() {
+        return plain.echo("org");
+    }
+
+    @Benchmark
+    public String proxyOnly() {
+        return proxied.echo("org");
+    }
+
+    @Benchmark
+    public String advised() {
+        return advised.echo("org");
+    }
+}
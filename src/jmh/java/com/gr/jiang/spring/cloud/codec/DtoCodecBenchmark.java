@@ -0,0 +1,102 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrgResponseDto 的二进制编码与 Jackson / Java 序列化对比, setUp 时输出三种格式的字节数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DtoCodecBenchmark {
+
+    private final DtoCodec<OrgResponseDto> codec = DtoCodec.build(OrgResponseDto.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final BinaryWriter writer = new BinaryWriter(256);
+
+    private OrgResponseDto dto;
+
+    private byte[] binary;
+
+    private byte[] json;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        dto = new OrgResponseDto();
+        dto.setMsgId("eureka-client01201705091230450001");
+        dto.setRetCode("0");
+        dto.setRetMsg("success");
+        dto.setResult("10086 result");
+        writer.reset();
+        codec.encode(dto, writer);
+        binary = writer.toByteArray();
+        json = mapper.writeValueAsBytes(dto);
+        serialized = javaSerialize();
+        System.out.println("size binary=" + binary.length + " json=" + json.length + " java=" + serialized.length);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        writer.reset();
+        codec.encode(dto, writer);
+        return writer.size();
+    }
+
+    @Benchmark
+    public OrgResponseDto decodeBinary() {
+        return codec.decode(new BinaryReader(binary, 0, binary.length));
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() throws IOException {
+        return mapper.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public OrgResponseDto decodeJackson() throws IOException {
+        return mapper.readValue(json, OrgResponseDto.class);
+    }
+
+    @Benchmark
+    public byte[] encodeJava() throws IOException {
+        return javaSerialize();
+    }
+
+    @Benchmark
+    public Object decodeJava() throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+    }
+
+    private byte[] javaSerialize() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(dto);
+        out.close();
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaUtils 字符串工具方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JavaUtilsBenchmark {
+
+    private final Set<String> values = new HashSet<String>(Arrays.asList("name", "name1", "name2", "name3"));
+
+    @Benchmark
+    public String xmlNameToJava() {
+        return JavaUtils.xmlNameToJava("org-detail_response.item");
+    }
+
+    @Benchmark
+    public String replace() {
+        return JavaUtils.replace("org.detail.response.item", ".", "_");
+    }
+
+    @Benchmark
+    public boolean isJavaId() {
+        return JavaUtils.isJavaId("orgDetailResponse");
+    }
+
+    @Benchmark
+    public String getLoadableClassName() {
+        return JavaUtils.getLoadableClassName("java.lang.String[][]");
+    }
+
+    @Benchmark
+    public String getUniqueValue() {
+        return JavaUtils.getUniqueValue(values, "name");
+    }
+
+    @Benchmark
+    public boolean isTrue() {
+        return JavaUtils.isTrue("false");
+    }
+}
@@ -0,0 +1,32 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JrnGenerator 流水号/消息id 生成
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JrnGeneratorBenchmark {
+
+    @Benchmark
+    public String genMsgId() {
+        return JrnGenerator.genMsgId();
+    }
+
+    @Benchmark
+    public String genJrnNo() {
+        return JrnGenerator.genJrnNo();
+    }
+}
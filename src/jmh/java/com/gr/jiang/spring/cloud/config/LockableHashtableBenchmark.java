@@ -0,0 +1,105 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LockableHashtable 多级 parent 查找以及大量锁定key时的 put
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockableHashtableBenchmark {
+
+    /**
+     * 多级 parent 的表, 只用于查找
+     */
+    @State(Scope.Benchmark)
+    public static class Chain {
+
+        /**
+         * parent 层数
+         */
+        @Param({"1", "2", "3", "4", "5"})
+        public int depth;
+
+        LockableHashtable leaf;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            LockableHashtable root = new LockableHashtable();
+            root.put("ROOT.KEY", "value");
+            LockableHashtable t = root;
+            for (int i = 0; i < depth; i++) {
+                LockableHashtable child = new LockableHashtable();
+                child.setParent(t);
+                child.put("LEVEL" + i, "value");
+                t = child;
+            }
+            leaf = t;
+        }
+    }
+
+    /**
+     * 含大量锁定key的表, 只用于 put
+     */
+    @State(Scope.Benchmark)
+    public static class Locked {
+
+        /**
+         * 锁定的key个数
+         */
+        @Param({"10", "1000"})
+        public int lockedKeys;
+
+        LockableHashtable table;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            table = new LockableHashtable();
+            for (int i = 0; i < lockedKeys; i++) {
+                table.put("LOCKED" + i, "value", true);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object getFromRoot(Chain chain) {
+        return chain.leaf.get("ROOT.KEY");
+    }
+
+    @Benchmark
+    public Object getMiss(Chain chain) {
+        return chain.leaf.get("NOT.EXIST");
+    }
+
+    /**
+     * 写入已锁定的key, 被拒绝
+     */
+    @Benchmark
+    public Object putLocked(Locked locked) {
+        return locked.table.put("LOCKED0", "other", true);
+    }
+
+    /**
+     * 写入未锁定的key, 不锁定, 每次都走正常写入路径
+     */
+    @Benchmark
+    public Object putUnlocked(Locked locked) {
+        return locked.table.put("UNLOCKED", "value", false);
+    }
+}
@@ -0,0 +1,100 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight 在热点key下的争用: 对比每次都计算与合并计算. coalesced 的结果中 executed/shared 两个辅助计数
+ * 给出实际计算与共享他人结果的调用次数, 合并比例为 shared / (executed + shared)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SingleFlightBenchmark {
+
+    /**
+     * 不同key的个数, 1 为所有线程争用同一个key
+     */
+    @Param({"1", "16", "1024"})
+    public int keys;
+
+    /**
+     * 单次计算消耗的CPU(Blackhole.consumeCPU 的 token 数)
+     */
+    @Param({"10000"})
+    public long work;
+
+    private SingleFlight<Integer, Long> flight;
+
+    private Integer[] keyObjects;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        flight = new SingleFlight<Integer, Long>();
+        keyObjects = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            keyObjects[i] = i;
+        }
+    }
+
+    /**
+     * 每个线程的计数, JMH 按迭代汇总后与吞吐量一起输出
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Flights {
+        public long executed;
+
+        public long shared;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            executed = 0;
+            shared = 0;
+        }
+    }
+
+    @Benchmark
+    public long direct() {
+        Blackhole.consumeCPU(work);
+        return work;
+    }
+
+    @Benchmark
+    public Long coalesced(final Flights flights) {
+        Integer key = keyObjects[ThreadLocalRandom.current().nextInt(keys)];
+        final boolean[] ran = new boolean[1];
+        Long value = flight.execute(key, new Supplier<Long>() {
+            public Long get() {
+                ran[0] = true;
+                Blackhole.consumeCPU(work);
+                return work;
+            }
+        });
+        if (ran[0]) {
+            flights.executed++;
+        } else {
+            flights.shared++;
+        }
+        return value;
+    }
+}
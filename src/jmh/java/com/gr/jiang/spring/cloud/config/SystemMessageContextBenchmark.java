@@ -0,0 +1,53 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SystemMessageContext 线程栈的 push/pop/getCurrentContext
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SystemMessageContextBenchmark {
+
+    private SystemMessageContext ctx;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = SystemMessageContext.createContext("bench", null);
+        SystemMessageContext.pushCurrentContext(ctx);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SystemMessageContext.removeCurrentContext();
+        ctx.clear();
+    }
+
+    @Benchmark
+    public SystemMessageContext pushPop() {
+        SystemMessageContext.pushCurrentContext(ctx);
+        return SystemMessageContext.popCurrentContext();
+    }
+
+    @Benchmark
+    public SystemMessageContext getCurrentContext() {
+        return SystemMessageContext.getCurrentContext();
+    }
+}
@@ -0,0 +1,120 @@
+package com.gr.jiang.spring.cloud.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gr.jiang.spring.cloud.Application;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /org/detail 端到端压测入口.
+ * <p>
+ * 未指定 loadtest.target 时在本进程内启动应用, 关闭配置中心和Eureka, 使用随机端口. 先按相同速率预热, 再正式压测,
+ * 结果以JSON写入 loadtest.output 目录, 文件名带时间戳, 便于比较多次结果.
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("loadtest.rate", 1000);
+        int duration = Integer.getInteger("loadtest.duration", 30);
+        int warmup = Integer.getInteger("loadtest.warmup", 10);
+        String target = System.getProperty("loadtest.target", "");
+        String output = System.getProperty("loadtest.output", "build/reports/loadtest");
+
+        ConfigurableApplicationContext app = null;
+        if (target.isEmpty()) {
+            app = SpringApplication.run(Application.class,
+                    "--server.port=0",
+                    "--spring.cloud.config.enabled=false",
+                    "--eureka.client.enabled=false",
+                    "--logging.level.root=WARN");
+            int port = ((EmbeddedWebApplicationContext) app).getEmbeddedServletContainer().getPort();
+            target = "http://localhost:" + port + "/org/detail";
+        }
+        try {
+            OpenLoopDriver driver = new OpenLoopDriver(target, rate);
+            if (warmup > 0) {
+                driver.run(warmup);
+            }
+            GcSnapshot before = GcSnapshot.take();
+            OpenLoopDriver.Result result = driver.run(duration);
+            GcSnapshot after = GcSnapshot.take();
+            write(output, report(target, rate, duration, result, before, after));
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    private static Map<String, Object> report(String target, int rate, int duration, OpenLoopDriver.Result r,
+                                              GcSnapshot before, GcSnapshot after) {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("target", target);
+        report.put("rate", rate);
+        report.put("durationSeconds", duration);
+        report.put("requests", r.requests);
+        report.put("errors", r.errors);
+        report.put("throughput", r.requests * 1e9 / r.elapsedNanos);
+        // 按计划发送时间计算, 已校正协同遗漏(coordinated omission)
+        report.put("latencyMillis", r.corrected);
+        // 按实际发送时间计算, 仅供对照
+        report.put("serviceTimeMillis", r.uncorrected);
+        Map<String, Object> gc = new LinkedHashMap<String, Object>();
+        gc.put("collections", after.collections - before.collections);
+        gc.put("timeMillis", after.timeMillis - before.timeMillis);
+        gc.put("allocatedBytes", after.allocatedBytes - before.allocatedBytes);
+        gc.put("allocatedBytesPerRequest", r.requests == 0 ? 0 : (after.allocatedBytes - before.allocatedBytes) / r.requests);
+        report.put("gc", gc);
+        return report;
+    }
+
+    private static void write(String dir, Map<String, Object> report) throws IOException {
+        File d = new File(dir);
+        d.mkdirs();
+        File f = new File(d, "loadtest-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + ".json");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(f, report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("report written to " + f.getAbsolutePath());
+    }
+
+    /**
+     * GC次数、耗时和进程内所有存活线程的累计分配字节数
+     */
+    static final class GcSnapshot {
+        long collections;
+
+        long timeMillis;
+
+        long allocatedBytes;
+
+        static GcSnapshot take() {
+            GcSnapshot s = new GcSnapshot();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                s.collections += Math.max(0, gc.getCollectionCount());
+                s.timeMillis += Math.max(0, gc.getCollectionTime());
+            }
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+                for (long bytes : t.getThreadAllocatedBytes(t.getAllThreadIds())) {
+                    if (bytes > 0) {
+                        s.allocatedBytes += bytes;
+                    }
+                }
+            }
+            return s;
+        }
+    }
+}
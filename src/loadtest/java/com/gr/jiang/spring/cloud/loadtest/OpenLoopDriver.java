@@ -0,0 +1,122 @@
+package com.gr.jiang.spring.cloud.loadtest;
+
+import com.gr.jiang.spring.cloud.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环(open-loop)恒定速率压测: 请求按计划时间发出, 不等待前一个请求完成.
+ * <p>
+ * 延迟从计划发送时间算起. 服务变慢导致请求在客户端排队时, 排队时间同样计入延迟, 不会因少发请求而掩盖停顿
+ * (即校正 coordinated omission).
+ */
+public class OpenLoopDriver {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final URL url;
+
+    private final int rate;
+
+    public OpenLoopDriver(String target, int rate) throws IOException {
+        this.url = new URL(target);
+        this.rate = rate;
+        // HttpURLConnection 复用 keep-alive 连接
+        System.setProperty("http.maxConnections", "256");
+    }
+
+    public Result run(int seconds) throws InterruptedException {
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final LatencyHistogram uncorrected = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        ExecutorService workers = Executors.newFixedThreadPool(256);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            final long intended = start + i * interval;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            workers.execute(new Runnable() {
+                public void run() {
+                    long sent = System.nanoTime();
+                    boolean ok = send();
+                    long end = System.nanoTime();
+                    corrected.record(end - intended);
+                    uncorrected.record(end - sent);
+                    if (!ok) {
+                        errors.increment();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        return new Result(total, errors.sum(), elapsed, summary(corrected), summary(uncorrected));
+    }
+
+    private boolean send() {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(30000);
+            int status = conn.getResponseCode();
+            InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+            if (in != null) {
+                byte[] buf = new byte[1024];
+                while (in.read(buf) >= 0) {
+                    // 读完响应体以便连接复用
+                }
+                in.close();
+            }
+            return status < 400;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Map<String, Double> summary(LatencyHistogram h) {
+        Map<String, Double> m = new LinkedHashMap<String, Double>();
+        for (double p : PERCENTILES) {
+            m.put("p" + p, h.getPercentile(p) / 1e6);
+        }
+        m.put("max", h.getMax() / 1e6);
+        m.put("mean", h.getCount() == 0 ? 0 : h.getSum() / 1e6 / h.getCount());
+        return m;
+    }
+
+    public static final class Result {
+        final long requests;
+
+        final long errors;
+
+        final long elapsedNanos;
+
+        final Map<String, Double> corrected;
+
+        final Map<String, Double> uncorrected;
+
+        Result(long requests, long errors, long elapsedNanos, Map<String, Double> corrected,
+               Map<String, Double> uncorrected) {
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.corrected = corrected;
+            this.uncorrected = uncorrected;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.gr.jiang.spring.cloud.aop;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按延迟梯度自适应调整并发上限的限流器.
+ * <p>
+ * 根据 Little 定律, 并发数 = 吞吐 x 延迟. 延迟接近无排队时的最小值(minRtt)时说明还有余量, 上限按 sqrt(limit) 增加;
+ * 延迟升高说明请求开始排队, 上限按 minRtt / rtt 的比例收缩. 超过上限的请求由调用方立即拒绝, 不排队.
+ * <p>
+ * minRtt 每 {@link #MIN_RTT_WINDOW} 个样本重新统计一次, 以适应服务正常延迟的变化.
+ * <p>
+ * 每个样本先无锁地累加到待处理的汇总中(个数、耗时和、最小耗时、最大并发), 取得 updating 的线程一次合并所有待处理样本,
+ * 其他线程不等待, 样本也不会丢弃.
+ */
+public class AdaptiveLimiter {
+
+    static final int MIN_RTT_WINDOW = 1000;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    /**
+     * 待处理样本的耗时和(纳秒)所占的低位数, 高位为样本个数. 两者用一次 getAndAdd 同时累加, 合并时一次取出.
+     * 两次合并之间的耗时和不会超过 2^44 纳秒(约4.9小时)
+     */
+    private static final int SUM_BITS = 44;
+
+    private static final long SUM_MASK = (1L << SUM_BITS) - 1;
+
+    private final AtomicLong pendingSamples = new AtomicLong();
+
+    private final AtomicLong pendingMinRtt = new AtomicLong(Long.MAX_VALUE);
+
+    private final AtomicInteger pendingMaxInFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // 以下字段只在持有 updating 时访问
+    private long minRtt = Long.MAX_VALUE;
+
+    private long windowMinRtt = Long.MAX_VALUE;
+
+    private int windowSamples;
+
+    /**
+     * 已合并的样本总数, 只由持有 updating 的线程写
+     */
+    private volatile long samples;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * 并发数未达到上限时占用一个名额并返回true, 否则返回false
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放名额并提交本次调用的耗时
+     *
+     * @param rttNanos 耗时(纳秒)
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        long rtt = Math.max(1, rttNanos);
+        pendingMinRtt.accumulateAndGet(rtt, Math::min);
+        pendingMaxInFlight.accumulateAndGet(current, Math::max);
+        pendingSamples.getAndAdd((1L << SUM_BITS) + rtt);
+        // 持有 updating 的线程在释放后会再检查一次, 因此样本总会被某个线程合并
+        while (pendingSamples.get() != 0 && updating.compareAndSet(false, true)) {
+            try {
+                drain();
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        long packed = pendingSamples.getAndSet(0);
+        int samples = (int) (packed >>> SUM_BITS);
+        if (samples == 0) {
+            return;
+        }
+        long avgRtt = Math.max(1, (packed & SUM_MASK) / samples);
+        long minSample = pendingMinRtt.getAndSet(Long.MAX_VALUE);
+        int maxInFlight = pendingMaxInFlight.getAndSet(0);
+        // 最小值可能已被上一次合并取走
+        update(avgRtt, Math.min(minSample, avgRtt), maxInFlight, samples);
+    }
+
+    /**
+     * @param rtt               本批样本的平均耗时
+     * @param minSample         本批样本的最小耗时
+     * @param inFlightAtRelease 本批样本释放时的最大并发数
+     * @param samples           本批样本数
+     */
+    private void update(long rtt, long minSample, int inFlightAtRelease, int samples) {
+        if (minSample < windowMinRtt) {
+            windowMinRtt = minSample;
+        }
+        this.samples += samples;
+        windowSamples += samples;
+        if (windowSamples >= MIN_RTT_WINDOW) {
+            minRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+            windowSamples = 0;
+        } else if (minSample < minRtt) {
+            minRtt = minSample;
+        }
+
+        double current = limit;
+        // 并发远低于上限时延迟不反映上限是否合适, 不增加上限
+        if (inFlightAtRelease * 2 < current && rtt <= minRtt * 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, (double) minRtt / rtt));
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 已合并到上限计算中的样本数
+     */
+    public long getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,17 @@
+package com.gr.jiang.spring.cloud.aop;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 不经过 {@link ServiceBulkheadAdvisor} 限流的 @Service. 用于批量、流式输出等耗时与请求规模成正比的服务:
+ * 其耗时会拉低限流器的并发上限, 被拒绝时也无法返回 IResponseDto. 这类服务内部调用的其他服务仍各自限流.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BulkheadExempt {
+}
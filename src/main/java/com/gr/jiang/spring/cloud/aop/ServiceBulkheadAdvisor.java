@@ -0,0 +1,103 @@
+package com.gr.jiang.spring.cloud.aop;
+
+import com.gr.jiang.spring.cloud.dto.IResponseDto;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个 @Service 一个 {@link AdaptiveLimiter} 作为隔离舱, 一个服务变慢只会收紧它自己的并发上限.
+ * 标注了 {@link BulkheadExempt} 的服务不限流.
+ * <p>
+ * 超过上限的调用立即返回: 返回类型为 IResponseDto 时返回 retCode 为 {@link IResponseDto#RET_CODE_OVERLOAD} 的响应,
+ * 否则抛出 {@link ServiceOverloadException}(由 overloadExceptionHandler 转为503). 在 ICommonServiceAspect 内层执行,
+ * 被拒绝的调用同样计入耗时和 retCode 统计.
+ */
+@Component
+public class ServiceBulkheadAdvisor extends DefaultPointcutAdvisor implements MethodInterceptor {
+
+    private final ConcurrentHashMap<Class<?>, AdaptiveLimiter> limiters = new ConcurrentHashMap<Class<?>, AdaptiveLimiter>();
+
+    @Value("${service.limiter.enabled:true}")
+    boolean enabled;
+
+    @Value("${service.limiter.initial:50}")
+    int initialLimit;
+
+    @Value("${service.limiter.min:4}")
+    int minLimit;
+
+    @Value("${service.limiter.max:1000}")
+    int maxLimit;
+
+    public ServiceBulkheadAdvisor() {
+        setPointcut(new ComposablePointcut(new AnnotationMatchingPointcut(Service.class, true))
+                .intersection(new ClassFilter() {
+                    public boolean matches(Class<?> clazz) {
+                        return AnnotationUtils.findAnnotation(clazz, BulkheadExempt.class) == null;
+                    }
+                }));
+        setAdvice(this);
+        setOrder(ICommonServiceAspect.ORDER + 1);
+    }
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!enabled) {
+            return invocation.proceed();
+        }
+        Class<?> service = invocation.getThis().getClass();
+        AdaptiveLimiter limiter = limiters.get(service);
+        if (limiter == null) {
+            limiter = limiters.computeIfAbsent(service, s -> new AdaptiveLimiter(initialLimit, minLimit, maxLimit));
+        }
+        if (!limiter.tryAcquire()) {
+            return reject(invocation, service);
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+
+    private static Object reject(MethodInvocation invocation, Class<?> service) {
+        Class<?> returnType = invocation.getMethod().getReturnType();
+        if (IResponseDto.class.isAssignableFrom(returnType)) {
+            try {
+                IResponseDto resDto = (IResponseDto) returnType.newInstance();
+                resDto.setRetCode(IResponseDto.RET_CODE_OVERLOAD);
+                resDto.setRetMsg("service overloaded");
+                return resDto;
+            } catch (InstantiationException | IllegalAccessException e) {
+                // 无法构造响应时退回到抛出异常
+            }
+        }
+        throw new ServiceOverloadException(service.getSimpleName());
+    }
+
+    /**
+     * advice 就是本对象, DefaultPointcutAdvisor.toString() 会无限递归
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ": services " + limiters.keySet();
+    }
+
+    /**
+     * 各服务的限流器
+     */
+    public Map<Class<?>, AdaptiveLimiter> getLimiters() {
+        return limiters;
+    }
+}
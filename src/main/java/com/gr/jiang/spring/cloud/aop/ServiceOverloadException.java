@@ -0,0 +1,11 @@
+package com.gr.jiang.spring.cloud.aop;
+
+/**
+ * 服务并发已达上限, 请求被拒绝. 仅用于返回值不是 IResponseDto 的服务方法.
+ */
+public class ServiceOverloadException extends RuntimeException {
+
+    public ServiceOverloadException(String service) {
+        super("service overloaded: " + service);
+    }
+}
@@ -0,0 +1,226 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 配置中心属性的快照, 创建后不再修改. 属性名有序保存, 按二分查找取值.
+ * <p>
+ * 文件格式(大端):
+ * <pre>
+ * int 魔数 "CFGS" | int 版本 | long 拉取时间(epoch 毫秒) | int 属性个数 n
+ * n x (int 名称偏移, int 名称长度, int 值偏移, int 值长度)    偏移相对于数据区起点
+ * 数据区: UTF-8 编码的名称和值
+ * </pre>
+ * 读取时将文件映射到内存, 启动时只解码属性名, 值在第一次读取时才解码. 读取时校验属性个数、每个偏移和长度
+ * 都在文件范围内, 以及属性名有序, 之后按需解码值不会越界.
+ */
+public final class ConfigSnapshot {
+
+    static final int MAGIC = 0x43464753;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER = 20;
+
+    private static final int ENTRY = 16;
+
+    private final long fetchedAt;
+
+    private final String[] names;
+
+    /**
+     * 已解码的值, 与 names 下标对应, 未解码时为null
+     */
+    private final String[] values;
+
+    /**
+     * 未解码的文件内容, 从Map创建时为null
+     */
+    private final ByteBuffer data;
+
+    private ConfigSnapshot(long fetchedAt, String[] names, String[] values, ByteBuffer data) {
+        this.fetchedAt = fetchedAt;
+        this.names = names;
+        this.values = values;
+        this.data = data;
+    }
+
+    /**
+     * 将拉取到的属性展开为快照, 同名属性取优先级最高的值
+     */
+    public static ConfigSnapshot of(PropertySource<?> source, long fetchedAt) {
+        Map<String, String> flat = new LinkedHashMap<String, String>();
+        if (source instanceof EnumerablePropertySource) {
+            for (String name : ((EnumerablePropertySource<?>) source).getPropertyNames()) {
+                Object v = source.getProperty(name);
+                if (v != null) {
+                    flat.put(name, v.toString());
+                }
+            }
+        }
+        String[] names = flat.keySet().toArray(new String[flat.size()]);
+        Arrays.sort(names);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = flat.get(names[i]);
+        }
+        return new ConfigSnapshot(fetchedAt, names, values, null);
+    }
+
+    /**
+     * 读取快照文件
+     *
+     * @throws IOException 文件不存在或格式不正确
+     */
+    public static ConfigSnapshot read(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) {
+                throw new IOException("not a config snapshot: " + file);
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("not a config snapshot: " + file);
+        }
+        long fetchedAt = buf.getLong(8);
+        int limit = buf.limit();
+        int n = buf.getInt(16);
+        if (n < 0 || n > (limit - HEADER) / ENTRY) {
+            throw new IOException("corrupt config snapshot " + file + ": " + n + " entries");
+        }
+        int dataStart = HEADER + n * ENTRY;
+        int dataLength = limit - dataStart;
+        for (int i = 0; i < 2 * n; i++) {
+            int offset = buf.getInt(HEADER + i * 8);
+            int length = buf.getInt(HEADER + i * 8 + 4);
+            if (offset < 0 || length < 0 || length > dataLength - offset) {
+                throw new IOException("corrupt config snapshot " + file + ": entry " + i / 2
+                        + " points outside the data area");
+            }
+        }
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            int e = HEADER + i * ENTRY;
+            names[i] = decode(buf, dataStart + buf.getInt(e), buf.getInt(e + 4));
+            if (i > 0 && names[i - 1].compareTo(names[i]) >= 0) {
+                throw new IOException("corrupt config snapshot " + file + ": names are not sorted");
+            }
+        }
+        return new ConfigSnapshot(fetchedAt, names, new String[n], buf);
+    }
+
+    /**
+     * 先写临时文件再改名, 其他进程不会读到写了一半的文件
+     */
+    public void write(Path file) throws IOException {
+        int n = names.length;
+        byte[][] bytes = new byte[n * 2][];
+        int dataLength = 0;
+        for (int i = 0; i < n; i++) {
+            bytes[2 * i] = names[i].getBytes(StandardCharsets.UTF_8);
+            bytes[2 * i + 1] = get(i).getBytes(StandardCharsets.UTF_8);
+            dataLength += bytes[2 * i].length + bytes[2 * i + 1].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + n * ENTRY + dataLength);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(fetchedAt).putInt(n);
+        int offset = 0;
+        for (byte[] b : bytes) {
+            buf.putInt(offset).putInt(b.length);
+            offset += b.length;
+        }
+        for (byte[] b : bytes) {
+            buf.put(b);
+        }
+        buf.flip();
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * 属性名, 已排序. 返回内部数组, 调用方不能修改
+     */
+    String[] names() {
+        return names;
+    }
+
+    public String get(String name) {
+        int i = Arrays.binarySearch(names, name);
+        return i < 0 ? null : get(i);
+    }
+
+    private String get(int i) {
+        String v = values[i];
+        if (v == null) {
+            // 并发解码得到的是相同的值, 不需要同步
+            int e = HEADER + (2 * i + 1) * 8;
+            v = decode(data, HEADER + names.length * ENTRY + data.getInt(e), data.getInt(e + 4));
+            values[i] = v;
+        }
+        return v;
+    }
+
+    /**
+     * 与另一个快照相比值不同的属性名(含只在一方存在的)
+     */
+    Set<String> diff(ConfigSnapshot other) {
+        Set<String> keys = new HashSet<String>();
+        for (String name : names) {
+            if (!get(name).equals(other.get(name))) {
+                keys.add(name);
+            }
+        }
+        for (String name : other.names) {
+            if (get(name) == null) {
+                keys.add(name);
+            }
+        }
+        return keys;
+    }
+
+    private static String decode(ByteBuffer buf, int pos, int len) {
+        byte[] b = new byte[len];
+        ByteBuffer d = buf.duplicate();
+        d.position(pos);
+        d.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
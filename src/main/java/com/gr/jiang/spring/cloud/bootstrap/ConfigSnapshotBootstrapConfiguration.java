@@ -0,0 +1,69 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServicePropertySourceLocator;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+
+/**
+ * 配置中心引导上下文的配置, 通过 META-INF/spring.factories 的 BootstrapConfiguration 加载.
+ * 将配置中心客户端替换为 {@link SnapshotConfigServicePropertySourceLocator}.
+ * <p>
+ * 没有 @Configuration 注解, 不会被应用上下文的组件扫描加载. 属性:
+ * <ul>
+ * <li>spring.cloud.config.snapshot.enabled 默认 true</li>
+ * <li>spring.cloud.config.snapshot.file 默认 config-snapshot/{spring.cloud.config.name}-{profile}.cfgs</li>
+ * <li>spring.cloud.config.snapshot.max-age-seconds 超过该时间的快照不再使用, 默认 86400</li>
+ * </ul>
+ */
+public class ConfigSnapshotBootstrapConfiguration {
+
+    @Bean
+    public static BeanPostProcessor configSnapshotLocatorPostProcessor() {
+        return new LocatorPostProcessor();
+    }
+
+    static class LocatorPostProcessor implements BeanPostProcessor, BeanFactoryAware, EnvironmentAware {
+
+        private BeanFactory beanFactory;
+
+        private Environment environment;
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof ConfigServicePropertySourceLocator)
+                    || bean instanceof SnapshotConfigServicePropertySourceLocator
+                    || !environment.getProperty("spring.cloud.config.snapshot.enabled", Boolean.class, true)) {
+                return bean;
+            }
+            ConfigClientProperties properties = beanFactory.getBean(ConfigClientProperties.class);
+            String file = environment.getProperty("spring.cloud.config.snapshot.file",
+                    "config-snapshot/" + properties.getName() + "-" + properties.getProfile().replace(',', '_') + ".cfgs");
+            long maxAge = environment.getProperty("spring.cloud.config.snapshot.max-age-seconds", Long.class, 86400L);
+            return new SnapshotConfigServicePropertySourceLocator(properties, (ConfigServicePropertySourceLocator) bean,
+                    Paths.get(file), maxAge * 1000);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.cloud.context.scope.refresh.RefreshScope;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * 应用上下文中的组件, 让引导上下文中的 {@link SnapshotConfigServicePropertySourceLocator}
+ * 将后台拉取到的配置变更刷新到应用上下文, 效果与 /refresh 相同, 但不再重复访问配置中心:
+ * <ul>
+ * <li>发布 EnvironmentChangeEvent, 重新绑定 @ConfigurationProperties 和日志级别</li>
+ * <li>调用 {@link RefreshScope#refreshAll()} 销毁 @RefreshScope 的bean, 下次使用时按新配置重建,
+ * 并发布 RefreshScopeRefreshedEvent</li>
+ * </ul>
+ * 通过 @Value 读取配置中心属性的bean必须标注 @RefreshScope, 否则在重启之前一直使用快照中的值.
+ */
+@Component
+public class ConfigSnapshotPublisherRegistrar implements SmartInitializingSingleton {
+
+    private final ApplicationContext context;
+
+    private final ObjectProvider<SnapshotConfigServicePropertySourceLocator> locator;
+
+    private final ObjectProvider<RefreshScope> refreshScope;
+
+    public ConfigSnapshotPublisherRegistrar(ApplicationContext context,
+                                            ObjectProvider<SnapshotConfigServicePropertySourceLocator> locator,
+                                            ObjectProvider<RefreshScope> refreshScope) {
+        this.context = context;
+        this.locator = locator;
+        this.refreshScope = refreshScope;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        SnapshotConfigServicePropertySourceLocator l = locator.getIfAvailable();
+        if (l != null) {
+            l.setChangeHandler(this::refresh);
+        }
+    }
+
+    void refresh(Set<String> keys) {
+        context.publishEvent(new EnvironmentChangeEvent(keys));
+        RefreshScope scope = refreshScope.getIfAvailable();
+        if (scope != null) {
+            scope.refreshAll();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServicePropertySourceLocator;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 带本地快照的配置中心客户端.
+ * <p>
+ * 启动时本地快照未超过 spring.cloud.config.snapshot.max-age-seconds 则直接使用快照, 同时在后台线程从配置中心拉取,
+ * 拉取成功后替换快照内容、写回文件, 有变化的属性交给 {@link ConfigSnapshotPublisherRegistrar} 在应用上下文中刷新.
+ * 快照不存在或已过期时与原来一样同步拉取, 成功后写入快照.
+ * <p>
+ * 进程启动之后的调用(健康检查、/refresh)直接访问配置中心, 成功时更新快照文件.
+ */
+public class SnapshotConfigServicePropertySourceLocator extends ConfigServicePropertySourceLocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotConfigServicePropertySourceLocator.class);
+
+    private final ConfigServicePropertySourceLocator delegate;
+
+    private final Path file;
+
+    private final long maxAgeMillis;
+
+    /**
+     * 进程内只有第一次启动使用快照, /refresh 新建的引导上下文仍同步拉取
+     */
+    private static final AtomicBoolean bootstrapped = new AtomicBoolean();
+
+    private volatile SnapshotPropertySource source;
+
+    private volatile Consumer<Set<String>> changeHandler;
+
+    /**
+     * 应用上下文就绪前后台拉取到的变更, 设置 changeHandler 时一并处理
+     */
+    private final Set<String> pendingKeys = new HashSet<String>();
+
+    public SnapshotConfigServicePropertySourceLocator(ConfigClientProperties properties,
+                                                      ConfigServicePropertySourceLocator delegate,
+                                                      Path file, long maxAgeMillis) {
+        super(properties);
+        this.delegate = delegate;
+        this.file = file;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    public PropertySource<?> locate(Environment environment) {
+        if (bootstrapped.compareAndSet(false, true)) {
+            ConfigSnapshot snapshot = readSnapshot();
+            if (snapshot != null) {
+                long age = System.currentTimeMillis() - snapshot.getFetchedAt();
+                if (age <= maxAgeMillis) {
+                    logger.info("starting from config snapshot {} ({} properties, {} s old)",
+                            file, snapshot.size(), age / 1000);
+                    source = new SnapshotPropertySource("configService", snapshot);
+                    refreshInBackground(environment);
+                    return source;
+                }
+                logger.info("config snapshot {} is {} s old, exceeding the limit, fetching synchronously", file, age / 1000);
+            }
+        }
+        PropertySource<?> fetched = delegate.locate(environment);
+        if (fetched != null) {
+            save(ConfigSnapshot.of(fetched, System.currentTimeMillis()));
+        }
+        return fetched;
+    }
+
+    private void refreshInBackground(final Environment environment) {
+        Thread t = new Thread(() -> {
+            try {
+                PropertySource<?> fetched = delegate.locate(environment);
+                if (fetched == null) {
+                    logger.warn("background config fetch failed, keeping snapshot {}", file);
+                    return;
+                }
+                ConfigSnapshot next = ConfigSnapshot.of(fetched, System.currentTimeMillis());
+                Set<String> changed = source.getSnapshot().diff(next);
+                source.setSnapshot(next);
+                save(next);
+                if (!changed.isEmpty()) {
+                    logger.info("config server returned {} changed properties", changed.size());
+                    publish(changed);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("background config fetch failed, keeping snapshot {}", file, e);
+            }
+        }, "config-snapshot-refresh");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * 由应用上下文设置, 之前积累的变更立即处理
+     *
+     * @param changeHandler 参数为发生变化的属性名
+     */
+    public void setChangeHandler(Consumer<Set<String>> changeHandler) {
+        Set<String> keys;
+        synchronized (pendingKeys) {
+            this.changeHandler = changeHandler;
+            keys = new HashSet<String>(pendingKeys);
+            pendingKeys.clear();
+        }
+        if (!keys.isEmpty()) {
+            changeHandler.accept(keys);
+        }
+    }
+
+    private void publish(Set<String> keys) {
+        Consumer<Set<String>> h;
+        synchronized (pendingKeys) {
+            h = changeHandler;
+            if (h == null) {
+                pendingKeys.addAll(keys);
+                return;
+            }
+        }
+        h.accept(keys);
+    }
+
+    private ConfigSnapshot readSnapshot() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return ConfigSnapshot.read(file);
+        } catch (IOException e) {
+            logger.warn("ignoring unreadable config snapshot {}", file, e);
+            return null;
+        }
+    }
+
+    private void save(ConfigSnapshot snapshot) {
+        try {
+            snapshot.write(file);
+        } catch (IOException e) {
+            logger.warn("failed to write config snapshot {}", file, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,39 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.springframework.core.env.EnumerablePropertySource;
+
+/**
+ * 以 {@link ConfigSnapshot} 为内容的属性源. 后台从配置中心拉取到新配置后整体替换快照, Environment 中的引用不变
+ */
+public class SnapshotPropertySource extends EnumerablePropertySource<Object> {
+
+    private volatile ConfigSnapshot snapshot;
+
+    public SnapshotPropertySource(String name, ConfigSnapshot snapshot) {
+        super(name, new Object());
+        this.snapshot = snapshot;
+    }
+
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(ConfigSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return snapshot.names().clone();
+    }
+
+    @Override
+    public boolean containsProperty(String name) {
+        return snapshot.get(name) != null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return snapshot.get(name);
+    }
+}
@@ -0,0 +1,79 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取 {@link BinaryWriter} 写出的数据. 数据不完整或长度非法时抛出 IllegalArgumentException, 由调用方转换为对应的错误
+ */
+public final class BinaryReader {
+
+    private final byte[] buf;
+
+    private int pos;
+
+    private final int limit;
+
+    public BinaryReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    private void require(long n) {
+        if (n < 0 || n > limit - pos) {
+            throw new IllegalArgumentException("unexpected end of binary dto data");
+        }
+    }
+
+    public int readByte() {
+        require(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    public long readLong() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public int readInt() {
+        return (int) readLong();
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public double readDouble() {
+        require(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (buf[pos++] & 0xFF) << (i << 3);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public String readString() {
+        long n = readVarLong();
+        if (n == 0) {
+            return null;
+        }
+        // varint 可以解出任意64位值, 先按 long 检查再转 int
+        require(n - 1);
+        int len = (int) (n - 1);
+        String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+}
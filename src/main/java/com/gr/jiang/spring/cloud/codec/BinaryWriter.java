@@ -0,0 +1,102 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * DtoCodec 使用的可扩容字节缓冲区. 整数使用 zigzag + varint 编码, 字符串为 (UTF-8长度+1) + UTF-8字节, 长度0表示null.
+ */
+public final class BinaryWriter {
+
+    private byte[] buf;
+
+    private int pos;
+
+    public BinaryWriter(int capacity) {
+        this.buf = new byte[Math.max(16, capacity)];
+    }
+
+    public void reset() {
+        pos = 0;
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+        }
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    public void writeLong(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public void writeInt(int v) {
+        writeLong(v);
+    }
+
+    public void writeBoolean(boolean v) {
+        writeByte(v ? 1 : 0);
+    }
+
+    public void writeDouble(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buf[pos++] = (byte) (bits >>> (i << 3));
+        }
+    }
+
+    public void writeString(String s) {
+        if (s == null) {
+            writeVarLong(0);
+            return;
+        }
+        int len = s.length();
+        boolean ascii = true;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            writeVarLong(len + 1);
+            ensure(len);
+            for (int i = 0; i < len; i++) {
+                buf[pos++] = (byte) s.charAt(i);
+            }
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+}
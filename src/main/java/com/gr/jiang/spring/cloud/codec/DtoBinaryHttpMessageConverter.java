@@ -0,0 +1,76 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import com.gr.jiang.spring.cloud.dto.IBaseDto;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+
+/**
+ * 以 application/x-dto-binary 读写 IBaseDto 子类. 只在请求的 Content-Type/Accept 明确指定该类型时使用,
+ * 其他情况仍由 JSON 处理.
+ */
+public class DtoBinaryHttpMessageConverter extends AbstractHttpMessageConverter<IBaseDto> {
+
+    public static final MediaType DTO_BINARY = MediaType.parseMediaType("application/x-dto-binary");
+
+    /**
+     * 线程上保留的写缓冲区上限, 写过大的DTO后扩容的缓冲区不再保留, 避免每个线程长期占用大块内存
+     */
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    static final ThreadLocal<BinaryWriter> WRITER = new ThreadLocal<BinaryWriter>() {
+        @Override
+        protected BinaryWriter initialValue() {
+            return new BinaryWriter(512);
+        }
+    };
+
+    private final DtoCodecRegistry registry;
+
+    public DtoBinaryHttpMessageConverter(DtoCodecRegistry registry) {
+        super(DTO_BINARY);
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return registry.supports(clazz);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected IBaseDto readInternal(Class<? extends IBaseDto> clazz, HttpInputMessage input)
+            throws IOException, HttpMessageNotReadableException {
+        byte[] body = StreamUtils.copyToByteArray(input.getBody());
+        try {
+            DtoCodec codec = registry.get(clazz);
+            return codec.decode(new BinaryReader(body, 0, body.length));
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException("invalid binary dto: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected void writeInternal(IBaseDto dto, HttpOutputMessage output)
+            throws IOException, HttpMessageNotWritableException {
+        DtoCodec codec = registry.get(dto.getClass());
+        BinaryWriter out = WRITER.get();
+        out.reset();
+        try {
+            codec.encode(dto, out);
+            output.getHeaders().setContentLength(out.size());
+            output.getBody().write(out.buffer(), 0, out.size());
+        } finally {
+            if (out.buffer().length > MAX_RETAINED_CAPACITY) {
+                WRITER.remove();
+            }
+        }
+    }
+}
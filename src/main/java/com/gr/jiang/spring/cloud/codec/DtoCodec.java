@@ -0,0 +1,249 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import com.gr.jiang.spring.cloud.dto.IBaseDto;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个 IBaseDto 子类的二进制编解码器, 每个类只构建一次.
+ * <p>
+ * 按属性名顺序编码所有同时有 getter 和 setter 的属性, 不写属性名. 数据以属性名和类型计算出的 schema 值开头,
+ * 收发双方的类定义不一致时解码失败而不是读出错误的值. 通过 getter 读取属性, DTO 中延迟取值的消息id会在编码时取值.
+ * <p>
+ * 支持 String, int, long, boolean, double 及其包装类型; 类中含有其他类型的属性时无法构建编解码器.
+ */
+public final class DtoCodec<T extends IBaseDto> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private final Class<T> type;
+
+    private final MethodHandle constructor;
+
+    private final Property[] properties;
+
+    private final int schema;
+
+    private DtoCodec(Class<T> type, MethodHandle constructor, Property[] properties, int schema) {
+        this.type = type;
+        this.constructor = constructor;
+        this.properties = properties;
+        this.schema = schema;
+    }
+
+    /**
+     * 为指定类构建编解码器
+     *
+     * @throws IllegalArgumentException 类没有公共无参构造方法或含有不支持的属性类型
+     */
+    public static <T extends IBaseDto> DtoCodec<T> build(Class<T> type) {
+        try {
+            MethodHandle ctor = LOOKUP.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            BeanInfo info = Introspector.getBeanInfo(type, Object.class);
+            List<Property> props = new ArrayList<Property>();
+            int schema = type.getSimpleName().hashCode();
+            for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+                if (pd.getReadMethod() == null || pd.getWriteMethod() == null) {
+                    continue;
+                }
+                Kind kind = Kind.of(pd.getPropertyType());
+                if (kind == null) {
+                    throw new IllegalArgumentException("unsupported property type " + pd.getPropertyType().getName()
+                            + " of " + type.getName() + "." + pd.getName());
+                }
+                MethodHandle getter = LOOKUP.unreflect(pd.getReadMethod())
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                MethodHandle setter = LOOKUP.unreflect(pd.getWriteMethod())
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                props.add(new Property(kind, getter, setter));
+                schema = 31 * schema + pd.getName().hashCode();
+                schema = 31 * schema + kind.ordinal();
+            }
+            return new DtoCodec<T>(type, ctor, props.toArray(new Property[props.size()]), schema);
+        } catch (NoSuchMethodException | IllegalAccessException | IntrospectionException e) {
+            throw new IllegalArgumentException("cannot build codec for " + type.getName(), e);
+        }
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public void encode(T dto, BinaryWriter out) {
+        out.writeInt(schema);
+        try {
+            for (Property p : properties) {
+                p.kind.write(out, p.getter.invokeExact((Object) dto));
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public T decode(BinaryReader in) {
+        int s = in.readInt();
+        if (s != schema) {
+            throw new IllegalArgumentException("binary dto schema mismatch for " + type.getName());
+        }
+        try {
+            T dto = type.cast(constructor.invokeExact());
+            for (Property p : properties) {
+                p.setter.invokeExact((Object) dto, p.kind.read(in));
+            }
+            return dto;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Property {
+        final Kind kind;
+
+        final MethodHandle getter;
+
+        final MethodHandle setter;
+
+        Property(Kind kind, MethodHandle getter, MethodHandle setter) {
+            this.kind = kind;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * 支持的属性类型. 包装类型先写一个字节表示是否为null
+     */
+    enum Kind {
+        STRING {
+            void write(BinaryWriter out, Object v) {
+                out.writeString((String) v);
+            }
+
+            Object read(BinaryReader in) {
+                return in.readString();
+            }
+        },
+        INT {
+            void write(BinaryWriter out, Object v) {
+                out.writeInt((Integer) v);
+            }
+
+            Object read(BinaryReader in) {
+                return in.readInt();
+            }
+        },
+        LONG {
+            void write(BinaryWriter out, Object v) {
+                out.writeLong((Long) v);
+            }
+
+            Object read(BinaryReader in) {
+                return in.readLong();
+            }
+        },
+        BOOLEAN {
+            void write(BinaryWriter out, Object v) {
+                out.writeBoolean((Boolean) v);
+            }
+
+            Object read(BinaryReader in) {
+                return in.readBoolean();
+            }
+        },
+        DOUBLE {
+            void write(BinaryWriter out, Object v) {
+                out.writeDouble((Double) v);
+            }
+
+            Object read(BinaryReader in) {
+                return in.readDouble();
+            }
+        },
+        BOXED_INT {
+            void write(BinaryWriter out, Object v) {
+                out.writeBoolean(v != null);
+                if (v != null) {
+                    out.writeInt((Integer) v);
+                }
+            }
+
+            Object read(BinaryReader in) {
+                return in.readBoolean() ? in.readInt() : null;
+            }
+        },
+        BOXED_LONG {
+            void write(BinaryWriter out, Object v) {
+                out.writeBoolean(v != null);
+                if (v != null) {
+                    out.writeLong((Long) v);
+                }
+            }
+
+            Object read(BinaryReader in) {
+                return in.readBoolean() ? in.readLong() : null;
+            }
+        },
+        BOXED_BOOLEAN {
+            void write(BinaryWriter out, Object v) {
+                out.writeByte(v == null ? 2 : ((Boolean) v ? 1 : 0));
+            }
+
+            Object read(BinaryReader in) {
+                int b = in.readByte();
+                return b == 2 ? null : b == 1;
+            }
+        },
+        BOXED_DOUBLE {
+            void write(BinaryWriter out, Object v) {
+                out.writeBoolean(v != null);
+                if (v != null) {
+                    out.writeDouble((Double) v);
+                }
+            }
+
+            Object read(BinaryReader in) {
+                return in.readBoolean() ? in.readDouble() : null;
+            }
+        };
+
+        abstract void write(BinaryWriter out, Object v);
+
+        abstract Object read(BinaryReader in);
+
+        static Kind of(Class<?> c) {
+            if (c == String.class) {
+                return STRING;
+            } else if (c == int.class) {
+                return INT;
+            } else if (c == long.class) {
+                return LONG;
+            } else if (c == boolean.class) {
+                return BOOLEAN;
+            } else if (c == double.class) {
+                return DOUBLE;
+            } else if (c == Integer.class) {
+                return BOXED_INT;
+            } else if (c == Long.class) {
+                return BOXED_LONG;
+            } else if (c == Boolean.class) {
+                return BOXED_BOOLEAN;
+            } else if (c == Double.class) {
+                return BOXED_DOUBLE;
+            }
+            return null;
+        }
+    }
+}
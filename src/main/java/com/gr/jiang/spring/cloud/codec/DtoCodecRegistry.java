@@ -0,0 +1,59 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import com.gr.jiang.spring.cloud.dto.IBaseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 启动时扫描指定包下所有非抽象的 IBaseDto 子类并构建其 {@link DtoCodec}. 不支持二进制编码的类记录日志后跳过,
+ * 由 JSON 处理.
+ */
+public class DtoCodecRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DtoCodecRegistry.class);
+
+    private final ConcurrentHashMap<Class<?>, DtoCodec<?>> codecs = new ConcurrentHashMap<Class<?>, DtoCodec<?>>();
+
+    public DtoCodecRegistry(String... basePackages) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AssignableTypeFilter(IBaseDto.class));
+        ClassLoader loader = ClassUtils.getDefaultClassLoader();
+        for (String pkg : basePackages) {
+            for (BeanDefinition bd : scanner.findCandidateComponents(pkg)) {
+                Class<?> c = ClassUtils.resolveClassName(bd.getBeanClassName(), loader);
+                if (!Modifier.isAbstract(c.getModifiers())) {
+                    register(c.asSubclass(IBaseDto.class));
+                }
+            }
+        }
+    }
+
+    /**
+     * 构建并注册一个类的编解码器, 不支持时返回false
+     */
+    public boolean register(Class<? extends IBaseDto> type) {
+        try {
+            codecs.put(type, DtoCodec.build(type));
+            return true;
+        } catch (IllegalArgumentException e) {
+            logger.info("binary codec not available for {}: {}", type.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends IBaseDto> DtoCodec<T> get(Class<T> type) {
+        return (DtoCodec<T>) codecs.get(type);
+    }
+
+    public boolean supports(Class<?> type) {
+        return codecs.containsKey(type);
+    }
+}
@@ -0,0 +1,69 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步接口使用的有界线程池. 队列满时直接拒绝, 由调用方快速返回, 不在Tomcat线程上排队.
+ * 批量接口使用单独的 ForkJoinPool, 其 StreamingResponseBody 在 mvcAsyncExecutor 上写出.
+ */
+@Configuration
+public class AsyncExecutorConfig {
+
+    @Value("${org.async.pool-size:32}")
+    int poolSize;
+
+    @Value("${org.async.queue-capacity:1000}")
+    int queueCapacity;
+
+    @Value("${org.batch.parallelism:0}")
+    int batchParallelism;
+
+    @Value("${org.batch.stream-threads:16}")
+    int streamThreads;
+
+    @Value("${org.batch.stream-queue-capacity:64}")
+    int streamQueueCapacity;
+
+    @Bean
+    public InstrumentedTaskDecorator orgTaskDecorator() {
+        return new InstrumentedTaskDecorator();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor orgExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("org-async-");
+        executor.setTaskDecorator(orgTaskDecorator());
+        executor.setRejectedExecutionHandler(orgTaskDecorator());
+        return executor;
+    }
+
+    /**
+     * Spring MVC 异步请求(StreamingResponseBody 等)使用的有界线程池, 代替默认每个请求新建线程的 SimpleAsyncTaskExecutor.
+     * 线程和队列都满时由请求线程自己写出响应, 从而减缓Tomcat接收新请求, 而不是拒绝后返回500
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamThreads);
+        executor.setMaxPoolSize(streamThreads);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ContextForkJoinPool orgBatchPool() {
+        int parallelism = batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors();
+        return new ContextForkJoinPool(parallelism);
+    }
+}
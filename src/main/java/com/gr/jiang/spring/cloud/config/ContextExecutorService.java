@@ -0,0 +1,88 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 包装一个 ExecutorService, 提交的任务在执行时使用提交线程的SystemMessageContext.
+ * <p>
+ * 可直接作为 CompletableFuture.supplyAsync(supplier, executor) 等方法的executor使用.
+ */
+public class ContextExecutorService implements ExecutorService {
+
+    private final ExecutorService delegate;
+
+    public ContextExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    public void execute(Runnable command) {
+        delegate.execute(ContextSnapshot.capture().wrap(command));
+    }
+
+    public Future<?> submit(Runnable task) {
+        return delegate.submit(ContextSnapshot.capture().wrap(task));
+    }
+
+    public <T> Future<T> submit(Runnable task, T result) {
+        return delegate.submit(ContextSnapshot.capture().wrap(task), result);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return delegate.submit(ContextSnapshot.capture().wrapCallable(task));
+    }
+
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks));
+    }
+
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return delegate.invokeAny(wrap(tasks));
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private static <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        List<Callable<T>> wrapped = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(snapshot.wrapCallable(task));
+        }
+        return wrapped;
+    }
+}
@@ -0,0 +1,77 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * 从外部提交的任务(execute/submit/invoke/invokeAll)在执行时使用提交线程的SystemMessageContext的 ForkJoinPool.
+ * <p>
+ * 在池中执行的并行流或 ForkJoinTask 会把子任务 fork 到其他工作线程, 这些子任务不经过本类的提交方法;
+ * 需要在子任务中使用Context时, 用 {@link ContextSnapshot#wrapFunction(java.util.function.Function)} 等方法包装流中的函数.
+ */
+public class ContextForkJoinPool extends ForkJoinPool {
+
+    public ContextForkJoinPool() {
+        super();
+    }
+
+    public ContextForkJoinPool(int parallelism) {
+        super(parallelism);
+    }
+
+    public <T> T invoke(ForkJoinTask<T> task) {
+        return super.invoke(wrap(ContextSnapshot.capture(), task));
+    }
+
+    public void execute(ForkJoinTask<?> task) {
+        super.execute(wrap(ContextSnapshot.capture(), task));
+    }
+
+    public void execute(Runnable task) {
+        super.execute(ContextSnapshot.capture().wrap(task));
+    }
+
+    public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+        return super.submit(wrap(ContextSnapshot.capture(), task));
+    }
+
+    public ForkJoinTask<?> submit(Runnable task) {
+        return super.submit(ContextSnapshot.capture().wrap(task));
+    }
+
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        return super.submit(ContextSnapshot.capture().wrap(task), result);
+    }
+
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        return super.submit(ContextSnapshot.capture().wrapCallable(task));
+    }
+
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        List<Callable<T>> wrapped = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(snapshot.wrapCallable(task));
+        }
+        return super.invokeAll(wrapped);
+    }
+
+    /**
+     * 用一个在快照Context中调用 task.invoke() 的任务代替原任务; 原任务随之完成, 调用方 join 原任务也能取得结果
+     */
+    private static <T> ForkJoinTask<T> wrap(ContextSnapshot snapshot, final ForkJoinTask<T> task) {
+        if (snapshot.getContext() == null) {
+            return task;
+        }
+        return ForkJoinTask.adapt(snapshot.wrapCallable(new Callable<T>() {
+            public T call() {
+                return task.invoke();
+            }
+        }));
+    }
+}
@@ -0,0 +1,86 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SystemMessageContext 中类型化的属性key.
+ * <p>
+ * key 通常定义为静态常量, 注册时分配固定的槽位, 属性值保存在 Context 的数组中, 读取时按下标直接取值,
+ * 不需要计算字符串hash和转换大小写. 值的类型在写入时检查, 读取时不会出现类型转换错误.
+ *
+ * <pre>
+ * public static final ContextKey&lt;String&gt; CHANNEL = ContextKey.register("channel", String.class);
+ * </pre>
+ */
+public final class ContextKey<T> {
+
+    private static final AtomicInteger SLOTS = new AtomicInteger();
+
+    private static final ConcurrentHashMap<String, ContextKey<?>> REGISTRY = new ConcurrentHashMap<String, ContextKey<?>>();
+
+    private final String name;
+
+    private final Class<T> type;
+
+    private final int slot;
+
+    private ContextKey(String name, Class<T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * 注册一个key. 同名key重复注册时返回已有的key, 类型不一致时抛出 IllegalArgumentException
+     *
+     * @param name key名称, 大小写不敏感
+     * @param type 值类型
+     * @return ContextKey
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ContextKey<T> register(String name, Class<T> type) {
+        if (name == null || type == null) {
+            throw new IllegalArgumentException("name and type must not be null");
+        }
+        String canonical = name.toUpperCase();
+        ContextKey<?> key = REGISTRY.get(canonical);
+        if (key == null) {
+            synchronized (REGISTRY) {
+                key = REGISTRY.get(canonical);
+                if (key == null) {
+                    key = new ContextKey<T>(canonical, type, SLOTS.getAndIncrement());
+                    REGISTRY.put(canonical, key);
+                }
+            }
+        }
+        if (key.type != type) {
+            throw new IllegalArgumentException("context key " + canonical + " already registered with type "
+                    + key.type.getName());
+        }
+        return (ContextKey<T>) key;
+    }
+
+    /**
+     * 已注册的key个数, 即Context中槽位数组需要的长度
+     */
+    static int slotCount() {
+        return SLOTS.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
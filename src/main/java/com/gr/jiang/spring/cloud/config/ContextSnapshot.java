@@ -0,0 +1,144 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 调用线程当前的SystemMessageContext快照, 用于把Context带到其他线程执行的任务中.
+ * <p>
+ * 包装后的任务在执行前把快照中的Context压入工作线程的栈, 执行完后弹出, 工作线程上创建的请求/响应DTO因此与调用线程
+ * 使用同一个消息id. 调用线程没有Context时包装方法直接返回原任务, 不增加开销.
+ *
+ * <pre>
+ * ContextSnapshot snapshot = ContextSnapshot.capture();
+ * list.parallelStream().map(snapshot.wrapFunction(this::handle))...
+ * </pre>
+ * 各函数式接口的包装方法使用不同的名字, 传入隐式类型的lambda时不会因重载产生歧义.
+ */
+public final class ContextSnapshot {
+
+    private static final ContextSnapshot EMPTY = new ContextSnapshot(null);
+
+    private final SystemMessageContext context;
+
+    private ContextSnapshot(SystemMessageContext context) {
+        this.context = context;
+    }
+
+    /**
+     * 捕获当前线程栈顶的Context
+     *
+     * @return ContextSnapshot
+     */
+    public static ContextSnapshot capture() {
+        SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+        return ctx == null ? EMPTY : new ContextSnapshot(ctx);
+    }
+
+    /**
+     * @return 快照中的Context, 可能为null
+     */
+    public SystemMessageContext getContext() {
+        return context;
+    }
+
+    /**
+     * 将Context压入当前线程并返回它, 用于 {@link #restore(SystemMessageContext)} 时核对
+     */
+    SystemMessageContext attach() {
+        SystemMessageContext.pushCurrentContext(context);
+        return context;
+    }
+
+    /**
+     * 弹出 attach 压入的Context, 以及任务中多压入而未弹出的Context
+     */
+    static void restore(SystemMessageContext attached) {
+        SystemMessageContext top;
+        do {
+            top = SystemMessageContext.popCurrentContext();
+        } while (top != null && top != attached);
+    }
+
+    public Runnable wrap(final Runnable task) {
+        if (context == null) {
+            return task;
+        }
+        return new Runnable() {
+            public void run() {
+                SystemMessageContext attached = attach();
+                try {
+                    task.run();
+                } finally {
+                    restore(attached);
+                }
+            }
+        };
+    }
+
+    public <V> Callable<V> wrapCallable(final Callable<V> task) {
+        if (context == null) {
+            return task;
+        }
+        return new Callable<V>() {
+            public V call() throws Exception {
+                SystemMessageContext attached = attach();
+                try {
+                    return task.call();
+                } finally {
+                    restore(attached);
+                }
+            }
+        };
+    }
+
+    public <T> Supplier<T> wrapSupplier(final Supplier<T> task) {
+        if (context == null) {
+            return task;
+        }
+        return new Supplier<T>() {
+            public T get() {
+                SystemMessageContext attached = attach();
+                try {
+                    return task.get();
+                } finally {
+                    restore(attached);
+                }
+            }
+        };
+    }
+
+    public <T, R> Function<T, R> wrapFunction(final Function<T, R> task) {
+        if (context == null) {
+            return task;
+        }
+        return new Function<T, R>() {
+            public R apply(T t) {
+                SystemMessageContext attached = attach();
+                try {
+                    return task.apply(t);
+                } finally {
+                    restore(attached);
+                }
+            }
+        };
+    }
+
+    public <T> Consumer<T> wrapConsumer(final Consumer<T> task) {
+        if (context == null) {
+            return task;
+        }
+        return new Consumer<T>() {
+            public void accept(T t) {
+                SystemMessageContext attached = attach();
+                try {
+                    task.accept(t);
+                } finally {
+                    restore(attached);
+                }
+            }
+        };
+    }
+}
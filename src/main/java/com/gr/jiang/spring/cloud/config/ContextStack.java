@@ -0,0 +1,71 @@
+package com.gr.jiang.spring.cloud.config;
+
+/**
+ * 线程私有的SystemMessageContext栈, 用数组实现, 不做同步.
+ * <p>
+ * 栈空时 peek/pop 返回null而不抛异常. 弹空或 clear 时只清空元素, 线程池中的线程在请求之间复用同一个栈和数组,
+ * 请求路径上的 push/pop 不产生新对象. 个别请求压栈过深而扩容的数组在栈清空时换回初始大小, 不长期占用.
+ */
+final class ContextStack {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * 栈清空后保留的最大容量
+     */
+    static final int MAX_RETAINED_CAPACITY = 64;
+
+    private SystemMessageContext[] elements = new SystemMessageContext[INITIAL_CAPACITY];
+
+    private int size;
+
+    void push(SystemMessageContext mc) {
+        if (size == elements.length) {
+            SystemMessageContext[] grown = new SystemMessageContext[size << 1];
+            System.arraycopy(elements, 0, grown, 0, size);
+            elements = grown;
+        }
+        elements[size++] = mc;
+    }
+
+    SystemMessageContext pop() {
+        if (size == 0) {
+            return null;
+        }
+        SystemMessageContext mc = elements[--size];
+        elements[size] = null;
+        if (size == 0) {
+            shrink();
+        }
+        return mc;
+    }
+
+    SystemMessageContext peek() {
+        return size == 0 ? null : elements[size - 1];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+
+    void clear() {
+        while (size > 0) {
+            elements[--size] = null;
+        }
+        shrink();
+    }
+
+    private void shrink() {
+        if (elements.length > MAX_RETAINED_CAPACITY) {
+            elements = new SystemMessageContext[INITIAL_CAPACITY];
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 供 ThreadPoolTaskExecutor 使用的 TaskDecorator, 把提交线程的SystemMessageContext带到执行线程.
+ */
+public class ContextTaskDecorator implements TaskDecorator {
+
+    public Runnable decorate(Runnable runnable) {
+        return ContextSnapshot.capture().wrap(runnable);
+    }
+}
@@ -0,0 +1,19 @@
+package com.gr.jiang.spring.cloud.config;
+
+import com.gr.jiang.spring.cloud.discovery.PeerRegistry;
+import com.netflix.discovery.EurekaClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 本地服务注册表. 关闭 Eureka 客户端(eureka.client.enabled=false)时注册表为空
+ */
+@Configuration
+public class DiscoveryConfig {
+
+    @Bean(destroyMethod = "close")
+    public PeerRegistry peerRegistry(ObjectProvider<EurekaClient> eurekaClient) {
+        return new PeerRegistry(eurekaClient.getIfAvailable());
+    }
+}
@@ -0,0 +1,94 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在传递SystemMessageContext的基础上统计任务的排队时间与执行时间.
+ * <p>
+ * 同时作为线程池的 RejectedExecutionHandler(与 AbortPolicy 相同, 抛出 RejectedExecutionException), 被拒绝的任务
+ * 单独计数, 不计入 submitted.
+ */
+public class InstrumentedTaskDecorator extends ContextTaskDecorator implements RejectedExecutionHandler {
+
+    /**
+     * decorate 的调用次数, 包括随后被拒绝的任务
+     */
+    private final LongAdder decorated = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder queueNanos = new LongAdder();
+
+    private final LongAdder runNanos = new LongAdder();
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        final Runnable task = super.decorate(runnable);
+        final long submitTime = System.nanoTime();
+        decorated.increment();
+        return new Runnable() {
+            public void run() {
+                long start = System.nanoTime();
+                queueNanos.add(start - submitTime);
+                boolean ok = false;
+                try {
+                    task.run();
+                    ok = true;
+                } finally {
+                    runNanos.add(System.nanoTime() - start);
+                    if (ok) {
+                        completed.increment();
+                    } else {
+                        failed.increment();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        rejected.increment();
+        throw new RejectedExecutionException("Task " + r + " rejected from " + executor);
+    }
+
+    /**
+     * 被线程池接受的任务数
+     */
+    public long getSubmitted() {
+        return decorated.sum() - rejected.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * 累计排队时间(纳秒)
+     */
+    public long getQueueNanos() {
+        return queueNanos.sum();
+    }
+
+    /**
+     * 累计执行时间(纳秒)
+     */
+    public long getRunNanos() {
+        return runNanos.sum();
+    }
+}
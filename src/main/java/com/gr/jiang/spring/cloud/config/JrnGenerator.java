@@ -1,35 +1,194 @@
 package com.gr.jiang.spring.cloud.config;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang.StringUtils;
+/**
+ * 流水号/消息id 生成器.
+ * <p>
+ * 默认为兼容模式, 格式与原来一致:
+ * <ul>
+ * <li>流水号: yyyyMMddHHmmss + 4位序号 + 实例编号</li>
+ * <li>消息id: 实例名称 + 实例编号 + yyyyMMddHHmmss + 4位序号</li>
+ * </ul>
+ * 同一秒内序号用尽时时间部分借用下一秒, 不再取模回绕, 因此不会产生重复id. 需要更高吞吐时可用
+ * {@link #setSeqWidth(int)} 加宽序号位数.
+ */
+public class JrnGenerator {
 
+    /**
+     * 兼容模式的序号位数
+     */
+    public static final int COMPAT_SEQ_WIDTH = 4;
 
-public class JrnGenerator {
+    /**
+     * 流水号和消息id的发生器, 更换位数时整体替换
+     */
+    private static volatile Sequences sequences = new Sequences(new SecondSequence(COMPAT_SEQ_WIDTH),
+            new SecondSequence(COMPAT_SEQ_WIDTH));
 
-    public static AtomicLong seq = new AtomicLong(0);
+    private static final SnowflakeSequence numericMsgIdSeq = new SnowflakeSequence();
 
-    public static String genJrnNo() {
+    private static final TrimmedText NODE = new TrimmedText();
+
+    private static final TrimmedText INSTANCE = new TrimmedText();
 
-        String nodId = SystemConstants.INSTANCE_NODE;
-        long a = seq.incrementAndGet();
-        a %= 10000;
-        return new SimpleDateFormat("yyyyMMddHHmmss").format(Calendar.getInstance().getTime())
-                + StringUtils.leftPad(String.valueOf(a), 4, "0") + StringUtils.trimToEmpty(nodId);
+    /**
+     * 每个线程复用的格式化缓冲区
+     */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[64];
+        }
+    };
+
+    /**
+     * 设置序号位数, 4 为兼容模式. 旧发生器停用后新发生器从其最后发出的秒之后开始,
+     * 反复切换也不会重复发出已发出的id.
+     *
+     * @param width 1 ~ {@link SecondSequence#MAX_WIDTH}
+     */
+    public static synchronized void setSeqWidth(int width) {
+        Sequences cur = sequences;
+        if (width == cur.jrn.getWidth()) {
+            return;
+        }
+        new SecondSequence(width); // 先校验位数, 不合法时不停用旧发生器
+        sequences = new Sequences(new SecondSequence(width, cur.jrn.retire()),
+                new SecondSequence(width, cur.msgId.retire()));
+    }
+
+    public static int getSeqWidth() {
+        return sequences.jrn.getWidth();
     }
 
-    public static AtomicLong msgIdSeq = new AtomicLong(0);
+    public static String genJrnNo() {
+        for (;;) {
+            SecondSequence s = sequences.jrn;
+            long ticket = s.next();
+            if (ticket != SecondSequence.RETIRED) {
+                return renderJrnNo(s, ticket);
+            }
+        }
+    }
 
     public static String genMsgId() {
+        for (;;) {
+            SecondSequence s = sequences.msgId;
+            long ticket = s.next();
+            if (ticket != SecondSequence.RETIRED) {
+                return renderMsgId(s, ticket);
+            }
+        }
+    }
+
+    /**
+     * 一次预留 n 个连续的流水号, 每个流水号在取用时才格式化
+     *
+     * @param n 个数, 不超过当前序号位数在一秒内的容量
+     * @return JrnRange
+     */
+    public static JrnRange reserveJrnNo(int n) {
+        for (;;) {
+            SecondSequence s = sequences.jrn;
+            long first = s.reserve(n);
+            if (first != SecondSequence.RETIRED) {
+                return new JrnRange(s, first, n, false);
+            }
+        }
+    }
+
+    /**
+     * 一次预留 n 个连续的消息id, 每个消息id在取用时才格式化
+     *
+     * @param n 个数, 不超过当前序号位数在一秒内的容量
+     * @return JrnRange
+     */
+    public static JrnRange reserveMsgId(int n) {
+        for (;;) {
+            SecondSequence s = sequences.msgId;
+            long first = s.reserve(n);
+            if (first != SecondSequence.RETIRED) {
+                return new JrnRange(s, first, n, true);
+            }
+        }
+    }
+
+    static String renderJrnNo(SecondSequence s, long ticket) {
+        char[] nod = NODE.chars(SystemConstants.INSTANCE_NODE);
+        char[] buf = buffer(SecondSequence.STAMP_LENGTH + s.getWidth() + nod.length);
+        int pos = s.writeStamp(ticket, buf, 0);
+        pos = s.writeSeq(ticket, buf, pos);
+        System.arraycopy(nod, 0, buf, pos, nod.length);
+        pos += nod.length;
+        return new String(buf, 0, pos);
+    }
+
+    static String renderMsgId(SecondSequence s, long ticket) {
+        char[] ins = INSTANCE.chars(SystemConstants.INSTANCE_ID);
+        char[] nod = NODE.chars(SystemConstants.INSTANCE_NODE);
+        char[] buf = buffer(ins.length + nod.length + SecondSequence.STAMP_LENGTH + s.getWidth());
+        System.arraycopy(ins, 0, buf, 0, ins.length);
+        int pos = ins.length;
+        System.arraycopy(nod, 0, buf, pos, nod.length);
+        pos += nod.length;
+        pos = s.writeStamp(ticket, buf, pos);
+        pos = s.writeSeq(ticket, buf, pos);
+        return new String(buf, 0, pos);
+    }
+
+    /**
+     * 生成64位数字消息id, 格式见 {@link SnowflakeSequence}
+     *
+     * @return long
+     */
+    public static long genNumericMsgId() {
+        return numericMsgIdSeq.next();
+    }
+
+    private static char[] buffer(int len) {
+        char[] buf = BUFFER.get();
+        if (buf.length < len) {
+            buf = new char[len];
+            BUFFER.set(buf);
+        }
+        return buf;
+    }
+
+    private static final class Sequences {
+        final SecondSequence jrn;
+
+        final SecondSequence msgId;
+
+        Sequences(SecondSequence jrn, SecondSequence msgId) {
+            this.jrn = jrn;
+            this.msgId = msgId;
+        }
+    }
+
+    /**
+     * 缓存 SystemConstants 中常量 trim 后的字符, 常量被重新赋值时重新计算
+     */
+    private static final class TrimmedText {
+        private volatile Entry entry = new Entry(null, new char[0]);
+
+        char[] chars(String src) {
+            Entry e = entry;
+            if (e.src != src) {
+                e = new Entry(src, src == null ? new char[0] : src.trim().toCharArray());
+                entry = e;
+            }
+            return e.chars;
+        }
+    }
+
+    private static final class Entry {
+        final String src;
+
+        final char[] chars;
 
-        String insId = SystemConstants.INSTANCE_ID;
-        String nodId = SystemConstants.INSTANCE_NODE;
-        long a = msgIdSeq.incrementAndGet();
-        a %= 10000;
-        return StringUtils.trimToEmpty(insId) + StringUtils.trimToEmpty(nodId)
-                + new SimpleDateFormat("yyyyMMddHHmmss").format(Calendar.getInstance().getTime())
-                + StringUtils.leftPad(String.valueOf(a), 4, "0");
+        Entry(String src, char[] chars) {
+            this.src = src;
+            this.chars = chars;
+        }
     }
 }
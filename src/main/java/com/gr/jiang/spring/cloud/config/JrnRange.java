@@ -0,0 +1,69 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * JrnGenerator 一次预留的一段连续流水号/消息id. 只保存起始序号和个数, 每个id在 {@link #get(int)} 时才格式化.
+ */
+public class JrnRange implements Iterable<String> {
+
+    private final SecondSequence sequence;
+
+    private final long first;
+
+    private final int size;
+
+    private final boolean msgId;
+
+    JrnRange(SecondSequence sequence, long first, int size, boolean msgId) {
+        this.sequence = sequence;
+        this.first = first;
+        this.size = size;
+        this.msgId = msgId;
+    }
+
+    /**
+     * 预留的个数
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 取第 index 个id
+     *
+     * @param index 0 ~ size-1
+     * @return String
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        long ticket = first + index;
+        return msgId ? JrnGenerator.renderMsgId(sequence, ticket) : JrnGenerator.renderJrnNo(sequence, ticket);
+    }
+
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
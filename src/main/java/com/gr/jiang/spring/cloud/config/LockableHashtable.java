@@ -15,10 +15,17 @@
  */
 package com.gr.jiang.spring.cloud.config;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 // fixme: Is there a reason to use Hashtable rather than Map here?
 
@@ -26,27 +33,52 @@ import java.util.concurrent.ConcurrentHashMap;
  * This subclass of the java Hashtable allows individual entries to be "locked" so that their values cannot be
  * overwritten or removed.
  * <p>
- * Note, only the put() and remove() methods have been overridden. The clear() method still removes all entries whether
- * they've been locked or not.
+ * Note, every mutating method (put(), putAll(), remove(), replace(), compute(), merge(), replaceAll()...) checks the
+ * lock atomically with the update of the entry; a locked entry is left untouched. The clear() method still removes all
+ * entries whether they've been locked or not. entrySet() and values() are read-only views, and keySet() returns a
+ * detached copy, because removal through ConcurrentHashMap's key set iterator cannot be intercepted.
  *
  * @author James Snell (jasnell@us.ibm.com)
  */
 public class LockableHashtable extends ConcurrentHashMap {
 
-    // fixme - we are potentialy synchronizing on /both/ the current Hashtable
-    // and also the Vector - a non-synchronizing List impl such as ArrayList
-    // may give better performance. We are doing lots of .contains on this
-    // Vector - it would probably be better to use a Set impl
     /**
-     * Stores the keys of the locked entries
+     * Stores the keys of the locked entries. Keys are only ever added, and always inside a compute on the same key, so a
+     * lock can never be lost or bypassed by a concurrent update.
      */
-    Vector lockedEntries;
+    final Set lockedEntries = ConcurrentHashMap.newKeySet();
 
     /**
      * Place to look for properties which we don't find locally.
      */
     private ConcurrentHashMap parent = null;
 
+    private static final AtomicLongFieldUpdater<LockableHashtable> VERSION =
+            AtomicLongFieldUpdater.newUpdater(LockableHashtable.class, "version");
+
+    /**
+     * 每次实际修改加1, 被锁定而拒绝的修改和无变化的修改不计数. 只增不减, 因此链上各表版本之和(链版本)在链上任一表
+     * 被修改后一定变大, 用于判断 {@link ResolvedView} 是否过期; 更换parent时见 {@link #setParent(ConcurrentHashMap)}
+     */
+    private volatile long version;
+
+    /**
+     * 视图过期后, 链版本连续这么多次读取不变才重新展开; 之前的读取逐级查找parent, 频繁修改的表不会每次读取都复制整条链
+     */
+    static final int REBUILD_AFTER_READS = 8;
+
+    /**
+     * 最近一次展开的 parent 链视图
+     */
+    private volatile ResolvedView resolved;
+
+    /**
+     * 视图过期后观察到的链版本, 及其连续未变化的读取次数. 只用于决定何时重新展开, 并发读写时计数不精确也无妨
+     */
+    private volatile long pendingVersion = -1;
+
+    private int cleanReads;
+
     public LockableHashtable() {
         super();
     }
@@ -56,7 +88,9 @@ public class LockableHashtable extends ConcurrentHashMap {
     }
 
     public LockableHashtable(ConcurrentHashMap p1) {
-        super(p1);
+        // super(p1) 会在 lockedEntries 初始化之前调用被覆盖的 putAll
+        super();
+        putAll(p1);
     }
 
     public LockableHashtable(int p1) {
@@ -68,7 +102,10 @@ public class LockableHashtable extends ConcurrentHashMap {
      */
     // public synchronized void setParent(Hashtable parent)
     public void setParent(ConcurrentHashMap parent) {
+        // 新链的版本之和可能小于旧链, 本表版本越过旧parent链的版本之和, 保证新的链版本大于任何旧视图记录的值
+        long above = chainVersion(this.parent);
         this.parent = parent;
+        VERSION.addAndGet(this, 1 + Math.max(above, 0));
     }
 
     /**
@@ -114,16 +151,7 @@ public class LockableHashtable extends ConcurrentHashMap {
      */
     // public synchronized Object put(Object p1, Object p2, boolean locked) {
     public Object put(Object p1, Object p2, boolean locked) {
-        if (lockedEntries != null && this.containsKey(p1) && lockedEntries.contains(p1)) {
-            return null;
-        }
-        if (locked) {
-            if (lockedEntries == null) {
-                lockedEntries = new Vector();
-            }
-            lockedEntries.add(p1);
-        }
-        return super.put(p1, p2);
+        return putIfUnlocked(p1, p2, locked);
     }
 
     /**
@@ -131,7 +159,7 @@ public class LockableHashtable extends ConcurrentHashMap {
      */
     // public synchronized Object put(Object p1, Object p2) {
     public Object put(Object p1, Object p2) {
-        return put(p1, p2, false);
+        return putIfUnlocked(p1, p2, false);
     }
 
     /**
@@ -139,16 +167,404 @@ public class LockableHashtable extends ConcurrentHashMap {
      */
     // public synchronized Object remove(Object p1) {
     public Object remove(Object p1) {
-        if (lockedEntries != null && lockedEntries.contains(p1)) {
+        return removeIfUnlocked(p1);
+    }
+
+    /**
+     * 若key存在且已锁定则不做修改并返回null, 否则写入value(locked为true时同时锁定key)并返回原值. 检查与写入是原子的.
+     */
+    public Object putIfUnlocked(final Object key, final Object value, final boolean locked) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final Object[] previous = new Object[1];
+        final boolean[] changed = new boolean[1];
+        super.compute(key, (k, old) -> {
+            if (old != null && lockedEntries.contains(k)) {
+                return old;
+            }
+            if (locked) {
+                lockedEntries.add(k);
+            }
+            previous[0] = old;
+            changed[0] = old != value;
+            return value;
+        });
+        if (changed[0]) {
+            modified();
+        }
+        return previous[0];
+    }
+
+    /**
+     * 若key已锁定则不做修改并返回null, 否则删除并返回原值. 检查与删除是原子的.
+     */
+    public Object removeIfUnlocked(final Object key) {
+        final Object[] previous = new Object[1];
+        super.computeIfPresent(key, (k, old) -> {
+            if (lockedEntries.contains(k)) {
+                return old;
+            }
+            previous[0] = old;
             return null;
+        });
+        if (previous[0] != null) {
+            modified();
         }
-        return super.remove(p1);
+        return previous[0];
     }
 
     /**
      * Returns true if a given key is in our locked list
      */
     public boolean isKeyLocked(Object key) {
-        return lockedEntries != null && lockedEntries.contains(key);
+        return lockedEntries.contains(key);
+    }
+
+    public void clear() {
+        if (!isEmpty()) {
+            super.clear();
+            modified();
+        }
+    }
+
+    /**
+     * 逐个经 {@link #put(Object, Object)} 写入, 已锁定的key保持原值
+     */
+    public void putAll(Map m) {
+        for (Iterator it = m.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry e = (Map.Entry) it.next();
+            putIfUnlocked(e.getKey(), e.getValue(), false);
+        }
+    }
+
+    public Object putIfAbsent(Object key, Object value) {
+        Object ret = super.putIfAbsent(key, value);
+        if (ret == null) {
+            modified();
+        }
+        return ret;
+    }
+
+    public boolean remove(final Object key, final Object value) {
+        if (value == null) {
+            return false;
+        }
+        final boolean[] removed = new boolean[1];
+        super.computeIfPresent(key, (k, old) -> {
+            if (lockedEntries.contains(k) || !old.equals(value)) {
+                return old;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            modified();
+        }
+        return removed[0];
+    }
+
+    public Object replace(final Object key, final Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final Object[] previous = new Object[1];
+        super.computeIfPresent(key, (k, old) -> {
+            if (lockedEntries.contains(k)) {
+                return old;
+            }
+            previous[0] = old;
+            return value;
+        });
+        if (previous[0] != null && previous[0] != value) {
+            modified();
+        }
+        return previous[0];
+    }
+
+    public boolean replace(final Object key, final Object oldValue, final Object newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        // [0] 是否替换, [1] 替换后值是否变化
+        final boolean[] replaced = new boolean[2];
+        super.computeIfPresent(key, (k, old) -> {
+            if (lockedEntries.contains(k) || !old.equals(oldValue)) {
+                return old;
+            }
+            replaced[0] = true;
+            replaced[1] = old != newValue;
+            return newValue;
+        });
+        if (replaced[1]) {
+            modified();
+        }
+        return replaced[0];
+    }
+
+    /**
+     * 已锁定的key不调用 remappingFunction, 直接返回当前值
+     */
+    public Object compute(final Object key, final BiFunction remappingFunction) {
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] changed = new boolean[1];
+        Object ret = super.compute(key, (k, old) -> {
+            if (old != null && lockedEntries.contains(k)) {
+                return old;
+            }
+            Object value = remappingFunction.apply(k, old);
+            changed[0] = value != old;
+            return value;
+        });
+        if (changed[0]) {
+            modified();
+        }
+        return ret;
+    }
+
+    /**
+     * 已锁定的key不调用 remappingFunction, 直接返回当前值
+     */
+    public Object computeIfPresent(final Object key, final BiFunction remappingFunction) {
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] changed = new boolean[1];
+        Object ret = super.computeIfPresent(key, (k, old) -> {
+            if (lockedEntries.contains(k)) {
+                return old;
+            }
+            Object value = remappingFunction.apply(k, old);
+            changed[0] = value != old;
+            return value;
+        });
+        if (changed[0]) {
+            modified();
+        }
+        return ret;
+    }
+
+    /**
+     * 只在key不存在时写入, 不会覆盖已锁定的值
+     */
+    public Object computeIfAbsent(final Object key, final Function mappingFunction) {
+        if (mappingFunction == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] added = new boolean[1];
+        Object ret = super.computeIfAbsent(key, k -> {
+            Object value = mappingFunction.apply(k);
+            added[0] = value != null;
+            return value;
+        });
+        if (added[0]) {
+            modified();
+        }
+        return ret;
+    }
+
+    /**
+     * 已锁定的key保持原值, 不调用 remappingFunction
+     */
+    public Object merge(final Object key, final Object value, final BiFunction remappingFunction) {
+        if (value == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] changed = new boolean[1];
+        Object ret = super.compute(key, (k, old) -> {
+            if (old == null) {
+                changed[0] = true;
+                return value;
+            }
+            if (lockedEntries.contains(k)) {
+                return old;
+            }
+            Object merged = remappingFunction.apply(old, value);
+            changed[0] = merged != old;
+            return merged;
+        });
+        if (changed[0]) {
+            modified();
+        }
+        return ret;
+    }
+
+    /**
+     * 已锁定的key保持原值
+     */
+    public void replaceAll(final BiFunction function) {
+        if (function == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] changed = new boolean[1];
+        super.replaceAll((k, old) -> {
+            if (lockedEntries.contains(k)) {
+                return old;
+            }
+            Object value = function.apply(k, old);
+            if (value != old) {
+                changed[0] = true;
+            }
+            return value;
+        });
+        if (changed[0]) {
+            modified();
+        }
+    }
+
+    /**
+     * 返回当前key的副本. ConcurrentHashMap.KeySetView 的迭代器删除不经过 remove(), 无法检查锁, 因此不返回实时视图
+     */
+    public KeySetView keySet() {
+        return new ConcurrentHashMap(this).keySet();
+    }
+
+    /**
+     * 不支持: 返回的视图可绕过锁删除元素
+     */
+    public KeySetView keySet(Object mappedValue) {
+        throw new UnsupportedOperationException("LockableHashtable does not expose a mutable key set");
+    }
+
+    /**
+     * 只读的实时视图
+     */
+    public Set entrySet() {
+        return Collections.unmodifiableSet(super.entrySet());
+    }
+
+    /**
+     * 只读的实时视图
+     */
+    public Collection values() {
+        return Collections.unmodifiableCollection(super.values());
+    }
+
+    private void modified() {
+        VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * 从 p 开始的parent链上各表版本之和; p 为null时为0, 链中有非 LockableHashtable(无法跟踪其修改)时为-1
+     */
+    private static long chainVersion(ConcurrentHashMap p) {
+        long sum = 0;
+        while (p != null) {
+            if (!(p instanceof LockableHashtable)) {
+                return -1;
+            }
+            LockableHashtable t = (LockableHashtable) p;
+            sum += t.version;
+            p = t.parent;
+        }
+        return sum;
+    }
+
+    /**
+     * 返回本表及其parent链展开后的只读视图. 视图在链上任一表被修改后失效, 下次调用时重新展开;
+     * 未失效时直接返回缓存的视图, key枚举不再逐级访问parent, 也不产生新对象.
+     * <p>
+     * parent链中有非 LockableHashtable 时无法跟踪其修改, 每次都重新展开.
+     */
+    public ResolvedView resolve() {
+        ResolvedView view = resolved;
+        if (view == null || !view.isCurrent()) {
+            view = rebuild();
+        }
+        return view;
+    }
+
+    /**
+     * 与 get() 结果相同. 视图未过期时只做一次 HashMap 查找; 过期时逐级查找parent,
+     * 链版本连续 {@link #REBUILD_AFTER_READS} 次读取不变后才重新展开视图
+     */
+    public Object getResolved(Object key) {
+        ResolvedView view = resolved;
+        long current = chainVersion(this);
+        if (view != null && view.version == current) {
+            return view.get(key);
+        }
+        if (current >= 0 && stableFor(current)) {
+            return rebuild().get(key);
+        }
+        return get(key);
+    }
+
+    private boolean stableFor(long current) {
+        if (pendingVersion != current) {
+            pendingVersion = current;
+            cleanReads = 0;
+        }
+        return ++cleanReads >= REBUILD_AFTER_READS;
+    }
+
+    private ResolvedView rebuild() {
+        ResolvedView view = new ResolvedView(this);
+        if (view.tracked) {
+            resolved = view;
+        }
+        return view;
+    }
+
+    /**
+     * LockableHashtable 及其parent链的展开快照
+     */
+    public static final class ResolvedView {
+        private final LockableHashtable table;
+
+        /**
+         * 展开时的链版本
+         */
+        private final long version;
+
+        private final boolean tracked;
+
+        private final Map values;
+
+        private final Set keys;
+
+        ResolvedView(LockableHashtable table) {
+            // 先记录版本再复制内容, 复制期间的修改会使视图在下次检查时失效
+            this.version = chainVersion(table);
+            int depth = 0;
+            for (ConcurrentHashMap p = table; p != null; ) {
+                depth++;
+                p = p instanceof LockableHashtable ? ((LockableHashtable) p).getParent() : null;
+            }
+            ConcurrentHashMap[] maps = new ConcurrentHashMap[depth];
+            ConcurrentHashMap p = table;
+            for (int i = 0; i < depth; i++) {
+                maps[i] = p;
+                p = p instanceof LockableHashtable ? ((LockableHashtable) p).getParent() : null;
+            }
+            HashMap values = new HashMap();
+            for (int i = depth - 1; i >= 0; i--) {
+                values.putAll(maps[i]);
+            }
+            this.table = table;
+            this.tracked = version >= 0;
+            this.values = values;
+            this.keys = Collections.unmodifiableSet(values.keySet());
+        }
+
+        /**
+         * 链上所有表自展开后都未被修改. 只读取链上各表的版本, 不访问表的内容; 其他链上的修改不影响本视图
+         */
+        public boolean isCurrent() {
+            return tracked && chainVersion(table) == version;
+        }
+
+        public Object get(Object key) {
+            return values.get(key);
+        }
+
+        /**
+         * 链上所有的key, 只读
+         */
+        public Set keys() {
+            return keys;
+        }
     }
 }
@@ -0,0 +1,74 @@
+package com.gr.jiang.spring.cloud.config;
+
+import com.gr.jiang.spring.cloud.discovery.PeerRegistry;
+import com.gr.jiang.spring.cloud.http.InstrumentedConnectionManager;
+import com.gr.jiang.spring.cloud.http.MsgIdHeaderInterceptor;
+import com.gr.jiang.spring.cloud.http.PeerHttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用其他服务的连接池配置. 服务端未返回 Keep-Alive 超时时连接最多空闲 peer.http.keep-alive-ms,
+ * 后台线程定期关闭过期和空闲超过 peer.http.idle-evict-ms 的连接.
+ */
+@Configuration
+public class PeerHttpClientConfig {
+
+    @Value("${peer.http.max-total:200}")
+    int maxTotal;
+
+    @Value("${peer.http.max-per-route:50}")
+    int maxPerRoute;
+
+    @Value("${peer.http.connect-timeout-ms:1000}")
+    int connectTimeout;
+
+    @Value("${peer.http.socket-timeout-ms:3000}")
+    int socketTimeout;
+
+    @Value("${peer.http.lease-timeout-ms:500}")
+    int leaseTimeout;
+
+    @Value("${peer.http.keep-alive-ms:30000}")
+    long keepAlive;
+
+    @Value("${peer.http.idle-evict-ms:60000}")
+    long idleEvict;
+
+    @Value("${peer.http.validate-after-inactivity-ms:2000}")
+    int validateAfterInactivity;
+
+    @Bean(destroyMethod = "close")
+    public PeerHttpClient peerHttpClient(PeerRegistry peerRegistry) {
+        InstrumentedConnectionManager cm = new InstrumentedConnectionManager(-1, TimeUnit.MILLISECONDS);
+        cm.setMaxTotal(maxTotal);
+        cm.setDefaultMaxPerRoute(maxPerRoute);
+        cm.setValidateAfterInactivity(validateAfterInactivity);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(leaseTimeout)
+                .build();
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(cm)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long ms = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return ms > 0 ? Math.min(ms, keepAlive) : keepAlive;
+                })
+                .addInterceptorFirst(new MsgIdHeaderInterceptor())
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvict, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+        return new PeerHttpClient(client, cm, peerRegistry);
+    }
+}
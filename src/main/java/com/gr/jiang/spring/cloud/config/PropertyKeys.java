@@ -0,0 +1,91 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SystemMessageContext 属性名的规范化(转大写)缓存.
+ * <p>
+ * 属性名一般是有限的常量, 第一次出现时计算 toUpperCase() 并缓存, 以后同名访问只做一次hash查找, 不再产生新字符串.
+ * 两段式的 key1 + "." + key2 用两级表查找, 不需要先拼接. 缓存条目数有上限, 超过后退回到直接转换, 避免动态key撑大内存;
+ * 两级表的上限按整张表的 (key1, key2) 组合总数计算, 而不是每一级分别计算.
+ */
+final class PropertyKeys {
+
+    /**
+     * 缓存的最大条目数, 并发写入时可能略微超出
+     */
+    static final int MAX_ENTRIES = 4096;
+
+    private static final ConcurrentHashMap<String, String> SINGLE = new ConcurrentHashMap<String, String>();
+
+    /**
+     * key1 + "." + key2
+     */
+    static final PropertyKeys DOTTED = new PropertyKeys(".");
+
+    /**
+     * key1 + key2
+     */
+    static final PropertyKeys JOINED = new PropertyKeys("");
+
+    private final String separator;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, String>> pairs =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
+
+    /**
+     * pairs 中缓存的组合总数
+     */
+    private final AtomicInteger pairCount = new AtomicInteger();
+
+    private PropertyKeys(String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * 返回 name.toUpperCase()
+     */
+    static String canonical(String name) {
+        String key = SINGLE.get(name);
+        if (key == null) {
+            key = name.toUpperCase();
+            if (SINGLE.size() < MAX_ENTRIES) {
+                SINGLE.putIfAbsent(name, key);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 返回 (key1 + separator + key2).toUpperCase()
+     */
+    String canonical(String key1, String key2) {
+        if (key1 == null || key2 == null) {
+            return canonical(key1 + separator + key2);
+        }
+        ConcurrentHashMap<String, String> second = pairs.get(key1);
+        if (second == null) {
+            if (pairCount.get() >= MAX_ENTRIES) {
+                return (key1 + separator + key2).toUpperCase();
+            }
+            ConcurrentHashMap<String, String> created = new ConcurrentHashMap<String, String>();
+            second = pairs.putIfAbsent(key1, created);
+            if (second == null) {
+                second = created;
+            }
+        }
+        String key = second.get(key2);
+        if (key == null) {
+            key = (key1 + separator + key2).toUpperCase();
+            if (pairCount.get() < MAX_ENTRIES && second.putIfAbsent(key2, key) == null) {
+                pairCount.incrementAndGet();
+            }
+        }
+        return key;
+    }
+
+    int pairCount() {
+        return pairCount.get();
+    }
+}
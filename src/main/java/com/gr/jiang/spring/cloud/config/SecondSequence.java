@@ -0,0 +1,219 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按秒滚动的序号发生器, 供 JrnGenerator 使用.
+ * <p>
+ * 状态压缩在一个 AtomicLong 中: 高位为秒数(epoch second), 低位为该秒内的序号. 同一秒内序号用尽时借用下一秒,
+ * 时钟回拨时继续沿用已发出的最大秒数, 因此同一实例发出的 (秒, 序号) 组合永不重复.
+ * <p>
+ * 秒对应的 yyyyMMddHHmmss 字符只在秒变化时计算一次并缓存.
+ * <p>
+ * 更换位数时旧序号发生器先 {@link #retire()}, 新发生器从旧发生器最后发出的秒之后开始, 之后旧发生器只返回
+ * {@link #RETIRED}, 调用方改用新发生器重取.
+ */
+public class SecondSequence {
+
+    /**
+     * 序号所占的低位比特数
+     */
+    static final int SEQ_BITS = 24;
+
+    static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+
+    /**
+     * 支持的最大序号位数, 10^7 < 2^24
+     */
+    public static final int MAX_WIDTH = 7;
+
+    /**
+     * yyyyMMddHHmmss 的长度
+     */
+    public static final int STAMP_LENGTH = 14;
+
+    /**
+     * 已停用的发生器返回的 ticket
+     */
+    public static final long RETIRED = -1L;
+
+    private final int width;
+
+    private final long limit;
+
+    private final AtomicLong state = new AtomicLong();
+
+    private volatile Stamp stamp = new Stamp(Long.MIN_VALUE, new char[STAMP_LENGTH]);
+
+    public SecondSequence(int width) {
+        this(width, 0);
+    }
+
+    /**
+     * @param width 序号位数
+     * @param after 上一个发生器 {@link #retire()} 返回的最后 ticket, 新发生器只在其之后的秒发出序号; 0 表示无
+     */
+    public SecondSequence(int width, long after) {
+        if (width < 1 || width > MAX_WIDTH) {
+            throw new IllegalArgumentException("sequence width must be between 1 and " + MAX_WIDTH + ": " + width);
+        }
+        this.width = width;
+        long l = 1;
+        for (int i = 0; i < width; i++) {
+            l *= 10;
+        }
+        this.limit = l;
+        if (after > 0) {
+            // 标记该秒序号已用尽, 下一个序号最早在 after 所在秒的下一秒
+            state.set((secondOf(after) << SEQ_BITS) | (l - 1));
+        }
+    }
+
+    /**
+     * 停用本发生器, 返回最后发出的 ticket. 停用后 next/reserve 返回 {@link #RETIRED}
+     */
+    public long retire() {
+        return state.getAndSet(RETIRED);
+    }
+
+    /**
+     * 取下一个序号, 返回值为压缩后的 (秒, 序号), 用 {@link #secondOf(long)} 和 {@link #seqOf(long)} 拆分
+     *
+     * @return long, 已停用时为 {@link #RETIRED}
+     */
+    public long next() {
+        long now = System.currentTimeMillis() / 1000;
+        for (;;) {
+            long cur = state.get();
+            if (cur == RETIRED) {
+                return RETIRED;
+            }
+            long sec = cur >>> SEQ_BITS;
+            long next;
+            if (now > sec) {
+                next = now << SEQ_BITS;
+            } else if ((cur & SEQ_MASK) + 1 < limit) {
+                next = cur + 1;
+            } else {
+                // 本秒序号已用尽, 借用下一秒
+                next = (sec + 1) << SEQ_BITS;
+            }
+            if (state.compareAndSet(cur, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 一次预留同一秒内连续的 n 个序号, 返回第一个序号的 ticket, 第 i 个为 ticket + i.
+     * 本秒剩余序号不足 n 个时整体移到下一秒, 与 {@link #next()} 发出的序号互不重复.
+     *
+     * @param n 1 ~ 10^width
+     * @return long, 已停用时为 {@link #RETIRED}
+     */
+    public long reserve(int n) {
+        if (n < 1 || n > limit) {
+            throw new IllegalArgumentException("reserve count must be between 1 and " + limit + ": " + n);
+        }
+        long now = System.currentTimeMillis() / 1000;
+        for (;;) {
+            long cur = state.get();
+            if (cur == RETIRED) {
+                return RETIRED;
+            }
+            long sec = cur >>> SEQ_BITS;
+            long first;
+            if (now > sec) {
+                first = now << SEQ_BITS;
+            } else if ((cur & SEQ_MASK) + n < limit) {
+                first = cur + 1;
+            } else {
+                first = (sec + 1) << SEQ_BITS;
+            }
+            // state 记录的是最后一个已发出的序号
+            if (state.compareAndSet(cur, first + n - 1)) {
+                return first;
+            }
+        }
+    }
+
+    public static long secondOf(long ticket) {
+        return ticket >>> SEQ_BITS;
+    }
+
+    public static long seqOf(long ticket) {
+        return ticket & SEQ_MASK;
+    }
+
+    /**
+     * 序号位数
+     *
+     * @return int
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 将 ticket 对应秒的 yyyyMMddHHmmss 写入 buf
+     *
+     * @return 写入后的位置
+     */
+    public int writeStamp(long ticket, char[] buf, int pos) {
+        long second = secondOf(ticket);
+        Stamp s = stamp;
+        if (s.second != second) {
+            s = new Stamp(second, format(second));
+            stamp = s;
+        }
+        System.arraycopy(s.chars, 0, buf, pos, STAMP_LENGTH);
+        return pos + STAMP_LENGTH;
+    }
+
+    /**
+     * 将 ticket 的序号按位数左补0写入 buf
+     *
+     * @return 写入后的位置
+     */
+    public int writeSeq(long ticket, char[] buf, int pos) {
+        long v = seqOf(ticket);
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return pos + width;
+    }
+
+    private static char[] format(long second) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+        char[] c = new char[STAMP_LENGTH];
+        put(c, 0, t.getYear(), 4);
+        put(c, 4, t.getMonthValue(), 2);
+        put(c, 6, t.getDayOfMonth(), 2);
+        put(c, 8, t.getHour(), 2);
+        put(c, 10, t.getMinute(), 2);
+        put(c, 12, t.getSecond(), 2);
+        return c;
+    }
+
+    private static void put(char[] c, int pos, int v, int len) {
+        for (int i = pos + len - 1; i >= pos; i--) {
+            c[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+    }
+
+    private static final class Stamp {
+        final long second;
+
+        final char[] chars;
+
+        Stamp(long second, char[] chars) {
+            this.second = second;
+            this.chars = chars;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一key的并发计算: 第一个调用者执行计算, 计算期间同一key的其他调用者等待并共享其结果.
+ * 计算结束后不保留结果, 之后的调用会重新计算. 共享的结果会被多个线程同时使用, 应当是不可变对象.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder executions = new LongAdder();
+
+    /**
+     * 执行或等待 key 对应的计算. 计算抛出的异常会传给所有等待者
+     *
+     * @param key      key
+     * @param supplier 计算方法
+     * @return 计算结果
+     */
+    public V execute(K key, Supplier<V> supplier) {
+        calls.increment();
+        CompletableFuture<V> flight = inFlight.get(key);
+        if (flight == null) {
+            CompletableFuture<V> created = new CompletableFuture<V>();
+            flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                executions.increment();
+                try {
+                    V value = supplier.get();
+                    created.complete(value);
+                    return value;
+                } catch (RuntimeException | Error e) {
+                    created.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            }
+        }
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 调用次数
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * 实际执行计算的次数
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * 被合并(等待他人结果)的调用次数
+     */
+    public long getCoalesced() {
+        return getCalls() - getExecutions();
+    }
+
+    /**
+     * 合并比例, 被合并的调用次数 / 调用次数
+     */
+    public double getCoalescingRatio() {
+        long c = getCalls();
+        return c == 0 ? 0 : (double) (c - getExecutions()) / c;
+    }
+}
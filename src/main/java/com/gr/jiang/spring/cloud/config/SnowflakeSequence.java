@@ -0,0 +1,115 @@
+package com.gr.jiang.spring.cloud.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 64位数字消息id发生器(Snowflake格式):
+ * <pre>
+ * 0 | 41位 毫秒(自 2017-01-01 起) | 10位 实例编号 | 12位 序号
+ * </pre>
+ * 同一毫秒内序号用尽时借用下一毫秒, 时钟回拨时沿用已发出的最大毫秒, 因此同一实例不会产生重复id.
+ * 生成的id按时间单调递增, 可直接用于排序和索引.
+ */
+public class SnowflakeSequence {
+
+    /**
+     * 2017-01-01 00:00:00 UTC
+     */
+    public static final long EPOCH = 1483228800000L;
+
+    static final int NODE_BITS = 10;
+
+    static final int SEQ_BITS = 12;
+
+    static final long NODE_MASK = (1L << NODE_BITS) - 1;
+
+    static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+
+    /**
+     * 高位为毫秒, 低 SEQ_BITS 位为序号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    private volatile Node node = new Node(null, 0);
+
+    /**
+     * 生成下一个id, 实例编号取自 {@link SystemConstants#INSTANCE_NODE}
+     *
+     * @return long
+     */
+    public long next() {
+        long now = System.currentTimeMillis() - EPOCH;
+        long ticket;
+        for (;;) {
+            long cur = state.get();
+            long ms = cur >>> SEQ_BITS;
+            long next;
+            if (now > ms) {
+                next = now << SEQ_BITS;
+            } else if ((cur & SEQ_MASK) < SEQ_MASK) {
+                next = cur + 1;
+            } else {
+                next = (ms + 1) << SEQ_BITS;
+            }
+            if (state.compareAndSet(cur, next)) {
+                ticket = next;
+                break;
+            }
+        }
+        long ms = ticket >>> SEQ_BITS;
+        return (ms << (NODE_BITS + SEQ_BITS)) | (nodeId(SystemConstants.INSTANCE_NODE) << SEQ_BITS) | (ticket & SEQ_MASK);
+    }
+
+    /**
+     * id 中的时间戳(epoch 毫秒)
+     */
+    public static long timeOf(long id) {
+        return (id >>> (NODE_BITS + SEQ_BITS)) + EPOCH;
+    }
+
+    /**
+     * id 中的实例编号
+     */
+    public static long nodeOf(long id) {
+        return (id >>> SEQ_BITS) & NODE_MASK;
+    }
+
+    /**
+     * id 中的序号
+     */
+    public static long seqOf(long id) {
+        return id & SEQ_MASK;
+    }
+
+    /**
+     * 实例编号为数字时直接取低10位, 否则取其hash的低10位
+     */
+    private long nodeId(String src) {
+        Node n = node;
+        if (n.src != src) {
+            long id = 0;
+            if (src != null) {
+                String s = src.trim();
+                try {
+                    id = Long.parseLong(s);
+                } catch (NumberFormatException e) {
+                    id = s.hashCode();
+                }
+            }
+            n = new Node(src, id & NODE_MASK);
+            node = n;
+        }
+        return n.id;
+    }
+
+    private static final class Node {
+        final String src;
+
+        final long id;
+
+        Node(String src, long id) {
+            this.src = src;
+            this.id = id;
+        }
+    }
+}
@@ -2,19 +2,57 @@ package com.gr.jiang.spring.cloud.config;
 
 import java.util.Iterator;
 import java.util.Set;
-import java.util.Stack;
 
 /**
  * Created by jiang on 2017/5/9.
  */
 public class SystemMessageContext {
+    /**
+     * requestId 使用 {@link JrnGenerator#genMsgId()} 生成的字符串
+     */
+    public static final int ID_MODE_STRING = 0;
+
+    /**
+     * requestId 使用 {@link JrnGenerator#genNumericMsgId()} 生成的64位数字, 仅在 getRequestId() 时转为字符串
+     */
+    public static final int ID_MODE_NUMERIC = 1;
+
+    protected static volatile int idMode = ID_MODE_STRING;
+
+    /**
+     * 设置新建Context的requestId生成方式
+     *
+     * @param mode ID_MODE_STRING 或 ID_MODE_NUMERIC
+     */
+    public static void setIdMode(int mode) {
+        if (mode != ID_MODE_STRING && mode != ID_MODE_NUMERIC) {
+            throw new IllegalArgumentException("unknown id mode: " + mode);
+        }
+        idMode = mode;
+    }
+
+    public static int getIdMode() {
+        return idMode;
+    }
+
+    /**
+     * 调用方的消息id, 由其他服务调用时在请求入口写入, 请求DTO以此作为前置消息id
+     */
+    public static final ContextKey<String> PRE_MSG_ID = ContextKey.register("preMsgId", String.class);
+
     private String requestId;
 
+    /**
+     * 数字模式下的requestId, 字符串模式下为0
+     */
+    private long numericRequestId;
+
     /**
      * Thread local storage used for locating the active message context. This information is only valid for the
-     * lifetime of this request.
+     * lifetime of this request. 栈在线程第一次压栈时创建, 此后一直留在线程上; 弹空或
+     * {@link #removeCurrentContext()} 时只清空元素, 不再引用请求的Context, 线程池中的线程在请求之间复用同一个栈.
      */
-    protected static ThreadLocal currentContext = new ThreadLocal();
+    protected static final ThreadLocal<ContextStack> currentContext = new ThreadLocal<ContextStack>();
 
     /**
      * 将指定的Context压栈到当前ThreadLocal中
@@ -23,40 +61,50 @@ public class SystemMessageContext {
      * @return void
      */
     public static void pushCurrentContext(SystemMessageContext mc) {
-        Stack s;
-        if (currentContext.get() == null) {
-            s = new Stack();
+        ContextStack s = currentContext.get();
+        if (s == null) {
+            s = new ContextStack();
             currentContext.set(s);
-        } else {
-            s = (Stack) currentContext.get();
         }
         s.push(mc);
     }
 
     /**
-     * 弹出当前ThreadLocal的栈顶Context
+     * 弹出当前ThreadLocal的栈顶Context, 栈为空时返回null
      *
      * @return HiContext
      */
     public static SystemMessageContext popCurrentContext() {
-        if (currentContext.get() != null) {
-            Stack s = (Stack) currentContext.get();
-            return (SystemMessageContext) s.pop();
+        ContextStack s = currentContext.get();
+        if (s == null) {
+            return null;
         }
-        return null;
+        return s.pop();
     }
 
     /**
-     * 获取当前ThreadLocal的栈顶Context.
+     * 获取当前ThreadLocal的栈顶Context, 栈为空时返回null
      *
      * @return HiContext
      */
     public static SystemMessageContext getCurrentContext() {
-        if (currentContext.get() != null) {
-            Stack s = (Stack) currentContext.get();
-            return (SystemMessageContext) s.peek();
+        ContextStack s = currentContext.get();
+        return s == null ? null : s.peek();
+    }
+
+    /**
+     * 获取当前ThreadLocal的栈顶Context, 栈为空时创建一个Context并压栈. 同一线程之后创建的请求/响应DTO因此共用一个消息id;
+     * 该Context在弹出或 {@link #removeCurrentContext()} 之前一直留在线程上
+     *
+     * @return HiContext
+     */
+    public static SystemMessageContext getOrCreateCurrentContext() {
+        SystemMessageContext mc = getCurrentContext();
+        if (mc == null) {
+            mc = createContext("currentContext", null);
+            pushCurrentContext(mc);
         }
-        return null;
+        return mc;
     }
 
     /**
@@ -66,28 +114,25 @@ public class SystemMessageContext {
      * @return void
      */
     public static void setCurrentContext(SystemMessageContext mc) {
-        Stack s;
-        if (currentContext.get() == null) {
-            s = new Stack();
+        ContextStack s = currentContext.get();
+        if (s == null) {
+            s = new ContextStack();
             currentContext.set(s);
-        } else {
-            s = (Stack) currentContext.get();
         }
-        if (!s.isEmpty())
-            s.pop();
+        s.pop();
         s.push(mc);
     }
 
     /**
-     * 清空当前的ThreadLocal
+     * 清空当前的ThreadLocal, 保留栈的容量供该线程下次使用
      *
      * @return void
      */
     public static void removeCurrentContext() {
-        // jdk1.4.2 not supported
-        currentContext.remove();
-        // currentContext.set(null);
-
+        ContextStack s = currentContext.get();
+        if (s != null) {
+            s.clear();
+        }
     }
 
     /**
@@ -152,12 +197,27 @@ public class SystemMessageContext {
      */
     protected final LockableHashtable bag;// = new LockableHashtable();
 
+    /**
+     * ContextKey 对应的属性值, 按 ContextKey 的槽位存放, 首次写入时创建
+     */
+    private volatile Object[] slots;
+
     protected SystemMessageContext parent;
 
     protected SystemMessageContext firstChild;
 
     protected SystemMessageContext nextBrother;
 
+    /**
+     * 前一个兄弟, 与 nextBrother 组成双向链表, 使删除子节点为 O(1)
+     */
+    protected SystemMessageContext prevBrother;
+
+    /**
+     * 最后一个子节点, 使添加子节点为 O(1)
+     */
+    protected SystemMessageContext lastChild;
+
     /**
      * Get a <code>String</code> property by name.
      *
@@ -176,8 +236,7 @@ public class SystemMessageContext {
      * @throws ClassCastException if the property named does not have a <code>String</code> value
      */
     public String getStrProp(String key1, String key2) {
-        String key = key1 + "." + key2;
-        return (String) getProperty(key);
+        return (String) getPropertyByKey(PropertyKeys.DOTTED.canonical(key1, key2));
     }
 
     /**
@@ -230,7 +289,7 @@ public class SystemMessageContext {
             // Is this right? Shouldn't we throw an exception like:
             // throw new IllegalArgumentException(msg);
         } else {
-            bag.put(name.toUpperCase(), value);
+            bag.put(PropertyKeys.canonical(name), value);
         }
     } // setProperty
 
@@ -240,7 +299,7 @@ public class SystemMessageContext {
      * @param name
      */
     public void delProperty(String name) {
-        bag.remove(name.toUpperCase());
+        bag.remove(PropertyKeys.canonical(name));
     }
 
     /**
@@ -251,7 +310,9 @@ public class SystemMessageContext {
      * @param value
      */
     public void setProperty(String key1, String key2, Object value) {
-        setProperty(key1 + "." + key2, value);
+        if (value != null) {
+            bag.put(PropertyKeys.DOTTED.canonical(key1, key2), value);
+        }
     } // setProperty
 
     public void setProperty(String name, Object value, boolean locked) {
@@ -260,12 +321,14 @@ public class SystemMessageContext {
             // Is this right? Shouldn't we throw an exception like:
             // throw new IllegalArgumentException(msg);
         } else {
-            bag.put(name.toUpperCase(), value, locked);
+            bag.put(PropertyKeys.canonical(name), value, locked);
         }
     } // setProperty
 
     public void setProperty(String key1, String key2, Object value, boolean locked) {
-        setProperty(key1 + key2, value, locked);
+        if (value != null) {
+            bag.put(PropertyKeys.JOINED.canonical(key1, key2), value, locked);
+        }
     } // setProperty
 
     /**
@@ -285,9 +348,7 @@ public class SystemMessageContext {
      * @return an <code>Iterator</code> over all property names
      */
     public Iterator getPropertyNames() {
-        // fixme: this is potentially unsafe for the caller - changing the
-        // properties will kill the iterator. Consider iterating over a copy:
-        // return new HashSet(bag.keySet()).iterator();
+        // LockableHashtable.keySet() 返回副本, 修改属性不影响迭代
         return bag.keySet().iterator();
     }
 
@@ -298,7 +359,7 @@ public class SystemMessageContext {
      * @return Iterator for the property names
      */
     public Iterator getAllPropertyNames() {
-        return bag.getAllKeys().iterator();
+        return bag.resolve().keys().iterator();
     }
 
     /**
@@ -312,7 +373,7 @@ public class SystemMessageContext {
             if (bag == null) {
                 return null;
             } else {
-                return bag.get(name.toUpperCase());
+                return bag.getResolved(PropertyKeys.canonical(name));
             }
         } else {
             return null;
@@ -327,8 +388,71 @@ public class SystemMessageContext {
      * @return
      */
     public Object getProperty(String key1, String key2) {
-        String key = key1 + "." + key2;
-        return getProperty(key);
+        return getPropertyByKey(PropertyKeys.DOTTED.canonical(key1, key2));
+    }
+
+    /**
+     * 按已规范化(大写)的key取值, 从展开的parent链视图中查找
+     */
+    private Object getPropertyByKey(String key) {
+        return bag == null ? null : bag.getResolved(key);
+    }
+
+    /**
+     * 按类型化的key取值, 当前Context没有时向上查找父Context
+     *
+     * @param key 已注册的ContextKey
+     * @return 属性值, 不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ContextKey<T> key) {
+        int slot = key.getSlot();
+        for (SystemMessageContext c = this; c != null; c = c.parent) {
+            Object[] s = c.slots;
+            if (s != null && slot < s.length && s[slot] != null) {
+                return (T) s[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 设置类型化key的值, value为null时删除当前Context中的值
+     *
+     * @param key   已注册的ContextKey
+     * @param value 属性值
+     */
+    public <T> void set(ContextKey<T> key, T value) {
+        if (value != null && !key.getType().isInstance(value)) {
+            throw new ClassCastException("value of " + key + " must be " + key.getType().getName());
+        }
+        int slot = key.getSlot();
+        synchronized (this) {
+            Object[] s = slots;
+            if (s == null || slot >= s.length) {
+                if (value == null) {
+                    return;
+                }
+                Object[] grown = new Object[Math.max(slot + 1, ContextKey.slotCount())];
+                if (s != null) {
+                    System.arraycopy(s, 0, grown, 0, s.length);
+                }
+                s = grown;
+            }
+            s[slot] = value;
+            // volatile写, 使其他线程读到 slots 时能看到数组元素的修改
+            slots = s;
+        }
+    }
+
+    /**
+     * 删除当前Context中类型化key的值
+     *
+     * @param key 已注册的ContextKey
+     */
+    @SuppressWarnings("unchecked")
+    public void remove(ContextKey<?> key) {
+        set((ContextKey<Object>) key, null);
     }
 
     /**
@@ -377,7 +501,11 @@ public class SystemMessageContext {
     }
 
     protected SystemMessageContext(String id, SystemMessageContext parent) {
-        this.requestId = JrnGenerator.genMsgId();
+        if (idMode == ID_MODE_NUMERIC) {
+            this.numericRequestId = JrnGenerator.genNumericMsgId();
+        } else {
+            this.requestId = JrnGenerator.genMsgId();
+        }
         bag = new LockableHashtable();
         if (parent == null)
             parent = RootContext;
@@ -389,17 +517,16 @@ public class SystemMessageContext {
         parent.addChild(this);
     }
 
-    protected void addChild(SystemMessageContext child) {
+    protected synchronized void addChild(SystemMessageContext child) {
         child.nextBrother = null;
+        child.prevBrother = lastChild;
 
         if (firstChild == null) {
             firstChild = child;
         } else {
-            SystemMessageContext lastChild = firstChild;
-            while (lastChild.nextBrother != null)
-                lastChild = lastChild.nextBrother;
             lastChild.nextBrother = child;
         }
+        lastChild = child;
     }
 
     /**
@@ -450,29 +577,39 @@ public class SystemMessageContext {
         }
     }
 
-    private void delchild(SystemMessageContext context) {
-        SystemMessageContext before = null;
-        if (firstChild != null) {
-            SystemMessageContext lastChild = firstChild;
-            do {
-                if (lastChild == context) {
-                    if (before == null) {
-                        firstChild = lastChild.nextBrother;
-                    } else {
-                        before.nextBrother = lastChild.nextBrother;
-                    }
-                    lastChild.nextBrother = null;
-                }
-                before = lastChild;
-                lastChild = lastChild.nextBrother;
-            } while (lastChild != null);
+    private synchronized void delchild(SystemMessageContext context) {
+        if (context.prevBrother == null && firstChild != context) {
+            // 不是当前节点的子节点, 或已被删除
+            return;
+        }
+        if (context.prevBrother == null) {
+            firstChild = context.nextBrother;
+        } else {
+            context.prevBrother.nextBrother = context.nextBrother;
+        }
+        if (context.nextBrother == null) {
+            lastChild = context.prevBrother;
+        } else {
+            context.nextBrother.prevBrother = context.prevBrother;
         }
+        context.prevBrother = null;
+        context.nextBrother = null;
     }
 
     /**
      * @return the requestId
      */
     public String getRequestId() {
+        if (requestId == null && numericRequestId != 0) {
+            requestId = Long.toString(numericRequestId);
+        }
         return requestId;
     }
+
+    /**
+     * @return 数字模式下的requestId, 字符串模式下返回0
+     */
+    public long getNumericRequestId() {
+        return numericRequestId;
+    }
 }
@@ -0,0 +1,62 @@
+package com.gr.jiang.spring.cloud.config;
+
+import com.gr.jiang.spring.cloud.codec.DtoBinaryHttpMessageConverter;
+import com.gr.jiang.spring.cloud.codec.DtoCodecRegistry;
+import com.gr.jiang.spring.cloud.metrics.RequestMetricsInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * Spring MVC 拦截器、消息转换与异步请求配置
+ */
+@Configuration
+public class WebMvcConfig extends WebMvcConfigurerAdapter {
+
+    @Autowired
+    RequestMetricsInterceptor requestMetricsInterceptor;
+
+    @Autowired
+    ThreadPoolTaskExecutor mvcAsyncExecutor;
+
+    @Value("${org.batch.timeout:60000}")
+    long asyncRequestTimeout;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestMetricsInterceptor);
+    }
+
+    /**
+     * 异步请求使用有界线程池; 未指定超时的异步请求(如批量查询的流式响应)超过 org.batch.timeout 毫秒后结束
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor);
+        configurer.setDefaultTimeout(asyncRequestTimeout);
+    }
+
+    /**
+     * 启动时为 dto 包下的所有DTO构建二进制编解码器
+     */
+    @Bean
+    public DtoCodecRegistry dtoCodecRegistry() {
+        return new DtoCodecRegistry("com.gr.jiang.spring.cloud.dto");
+    }
+
+    /**
+     * 二进制转换器放在最后, 只有 Accept/Content-Type 为 application/x-dto-binary 时才会选中, 其余仍走 JSON
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new DtoBinaryHttpMessageConverter(dtoCodecRegistry()));
+    }
+}
@@ -0,0 +1,53 @@
+package com.gr.jiang.spring.cloud.controller;
+
+import com.gr.jiang.spring.cloud.metrics.RequestMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 以 Prometheus 文本格式输出请求指标. 输出缓冲区按线程复用, 抓取时不为输出内容重新分配.
+ */
+@RestController
+public class metricsController {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(8192);
+        }
+    };
+
+    private static final ThreadLocal<char[]> CHARS = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[8192];
+        }
+    };
+
+    @Autowired
+    RequestMetrics requestMetrics;
+
+    @RequestMapping("/prometheus")
+    public void prometheus(HttpServletResponse response) throws IOException {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        requestMetrics.writePrometheus(out);
+
+        char[] chars = CHARS.get();
+        if (chars.length < out.length()) {
+            chars = new char[out.capacity()];
+            CHARS.set(chars);
+        }
+        out.getChars(0, out.length(), chars, 0);
+
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        Writer writer = response.getWriter();
+        writer.write(chars, 0, out.length());
+        writer.flush();
+    }
+}
@@ -1,18 +1,33 @@
 package com.gr.jiang.spring.cloud.controller;
 
+import com.gr.jiang.spring.cloud.config.ContextSnapshot;
+import com.gr.jiang.spring.cloud.dto.IResponseDto;
 import com.gr.jiang.spring.cloud.dto.impl.OrgRequestDto;
 import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import com.gr.jiang.spring.cloud.service.OrgBatchService;
 import com.gr.jiang.spring.cloud.service.OrgService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.Cloud;
 import org.springframework.cloud.CloudFactory;
 import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Created by jiang on 2017/3/10.
@@ -23,11 +38,20 @@ public class orgController {
     @Autowired
     OrgService orgService;
 
+    @Autowired
+    OrgBatchService orgBatchService;
+
+    @Autowired
+    ThreadPoolTaskExecutor orgExecutor;
+
     @Value("${foo:default-value}")
     String bar;
 
+    @Value("${org.async.timeout:3000}")
+    long asyncTimeout;
+
     @RequestMapping("/detail")
-    public String org(){
+    public ResponseEntity<String> org(){
         OrgRequestDto reqDto = new OrgRequestDto();
         reqDto.setId("Id");
         OrgResponseDto resDto = orgService.handle(reqDto);
@@ -37,6 +61,65 @@ public class orgController {
 //        List<ServiceInfo> serviceInfos = cloud.getServiceInfos();
 //        List<ServiceInfo> databaseInfos = cloud.getServiceInfos(DataSource.class);
 
-        return "## org ##" + resDto.getResult();
+        return render(resDto);
+    }
+
+    /**
+     * 与 /detail 相同, 但在 orgExecutor 上执行, 不占用Tomcat线程. 超时或线程池已满时立即返回503
+     */
+    @RequestMapping("/detail/async")
+    public DeferredResult<ResponseEntity<String>> orgAsync(){
+        final DeferredResult<ResponseEntity<String>> result = new DeferredResult<ResponseEntity<String>>(asyncTimeout,
+                unavailable("## org ## timeout"));
+        final OrgRequestDto reqDto = new OrgRequestDto();
+        reqDto.setId("Id");
+        try {
+            final Future<?> future = orgExecutor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        OrgResponseDto resDto = orgService.handle(reqDto);
+                        result.setResult(render(resDto));
+                    } catch (RuntimeException e) {
+                        result.setErrorResult(e);
+                    }
+                }
+            });
+            result.onTimeout(new Runnable() {
+                public void run() {
+                    future.cancel(true);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            result.setResult(unavailable("## org ## busy"));
+        }
+        return result;
+    }
+
+    /**
+     * 被 ServiceBulkheadAdvisor 拒绝的调用返回503, 其余返回200
+     */
+    private static ResponseEntity<String> render(OrgResponseDto resDto) {
+        if (IResponseDto.RET_CODE_OVERLOAD.equals(resDto.getRetCode())) {
+            return unavailable("## org ## overloaded");
+        }
+        return ResponseEntity.ok("## org ##" + resDto.getResult());
+    }
+
+    private static ResponseEntity<String> unavailable(String body) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(body);
+    }
+
+    /**
+     * 批量查询, 请求体为id的JSON数组, 结果按完成顺序逐行返回(application/x-ndjson)
+     */
+    @RequestMapping(value = "/details", method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> orgs(@RequestBody final List<String> ids){
+        final ContextSnapshot snapshot = ContextSnapshot.capture();
+        StreamingResponseBody body = new StreamingResponseBody() {
+            public void writeTo(OutputStream out) throws IOException {
+                orgBatchService.stream(ids, snapshot, out);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
     }
 }
@@ -0,0 +1,20 @@
+package com.gr.jiang.spring.cloud.controller;
+
+import com.gr.jiang.spring.cloud.aop.ServiceOverloadException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * 返回值不是 IResponseDto 的服务方法被 ServiceBulkheadAdvisor 拒绝时抛出 {@link ServiceOverloadException},
+ * 与 orgController 中被拒绝的 IResponseDto 一样返回503, 而不是500
+ */
+@ControllerAdvice
+public class overloadExceptionHandler {
+
+    @ExceptionHandler(ServiceOverloadException.class)
+    public ResponseEntity<String> overloaded(ServiceOverloadException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body("## overloaded ##");
+    }
+}
@@ -0,0 +1,88 @@
+package com.gr.jiang.spring.cloud.discovery;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一个应用在某次刷新时的可用(UP)实例, 创建后不再修改. 同时记录构建时注册中心中该应用的全部实例(含非UP),
+ * 用于在下次刷新时判断应用是否有变化
+ */
+public final class AppSnapshot {
+
+    private final String name;
+
+    private final PeerInstance[] instances;
+
+    private final InstanceInfo[] source;
+
+    AppSnapshot(String name, PeerInstance[] instances, InstanceInfo[] source) {
+        this.name = name;
+        this.instances = instances;
+        this.source = source;
+    }
+
+    /**
+     * 应用的实例与构建本快照时相同: 个数一致, 且每个实例仍在、状态和 lastDirtyTimestamp 未变.
+     * 按实例id查找比较, 不分配对象; Eureka 增量更新替换的实例对象和全量拉取的新对象都按内容比较
+     */
+    boolean isUnchanged(Application app) {
+        if (app.size() != source.length) {
+            return false;
+        }
+        for (InstanceInfo info : source) {
+            InstanceInfo current = app.getByInstanceId(info.getId());
+            if (current != info && (current == null || current.getStatus() != info.getStatus()
+                    || !equal(current.getLastDirtyTimestamp(), info.getLastDirtyTimestamp()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * 两次随机选择(power of two choices): 随机取两个实例, 返回代价较小的一个. 不加锁, 不分配对象
+     *
+     * @return 没有可用实例时返回null
+     */
+    public PeerInstance choose() {
+        PeerInstance[] a = instances;
+        int n = a.length;
+        if (n == 0) {
+            return null;
+        }
+        if (n == 1) {
+            return a[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) {
+            j++;
+        }
+        PeerInstance x = a[i];
+        PeerInstance y = a[j];
+        return x.cost() <= y.cost() ? x : y;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return instances.length;
+    }
+
+    public PeerInstance get(int i) {
+        return instances[i];
+    }
+
+    PeerInstance[] instances() {
+        return instances;
+    }
+}
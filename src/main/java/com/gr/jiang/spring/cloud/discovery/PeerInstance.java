@@ -0,0 +1,143 @@
+package com.gr.jiang.spring.cloud.discovery;
+
+import com.netflix.appinfo.InstanceInfo;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 注册中心中的一个服务实例及其调用统计(进行中的调用数, 耗时的指数移动平均, 连续失败次数).
+ * <p>
+ * 失败的调用不计入耗时(快速失败的实例耗时最短, 否则会在选择中胜出), 而是让实例退避一段时间: 退避期间的代价为最大值,
+ * 只在另一个候选也在退避时才被选中. 连续失败时退避时间加倍, 一次成功即恢复.
+ * <p>
+ * 实例信息不变时注册表刷新会沿用同一个对象, 统计数据不会因刷新而丢失.
+ */
+public final class PeerInstance {
+
+    private static final AtomicIntegerFieldUpdater<PeerInstance> IN_FLIGHT =
+            AtomicIntegerFieldUpdater.newUpdater(PeerInstance.class, "inFlight");
+
+    /**
+     * 还没有耗时数据时假定的耗时, 保证新实例能分到请求
+     */
+    static final long INITIAL_LATENCY_NANOS = 1000000L;
+
+    /**
+     * 第一次失败后的退避时间, 之后每次连续失败加倍, 不超过 {@link #MAX_BACKOFF_NANOS}
+     */
+    static final long INITIAL_BACKOFF_NANOS = 100000000L;
+
+    static final long MAX_BACKOFF_NANOS = 10000000000L;
+
+    private final String id;
+
+    private final String host;
+
+    private final int port;
+
+    private final String baseUrl;
+
+    private final long lastDirtyTimestamp;
+
+    private volatile int inFlight;
+
+    private volatile long latencyNanos = INITIAL_LATENCY_NANOS;
+
+    /**
+     * 连续失败次数, 并发更新时可能少计, 只影响退避时间
+     */
+    private volatile int failures;
+
+    private volatile long backoffUntilNanos;
+
+    PeerInstance(InstanceInfo info) {
+        this.id = info.getId();
+        this.host = info.getHostName();
+        boolean secure = info.isPortEnabled(InstanceInfo.PortType.SECURE);
+        this.port = secure ? info.getSecurePort() : info.getPort();
+        this.baseUrl = (secure ? "https://" : "http://") + host + ":" + port;
+        Long dirty = info.getLastDirtyTimestamp();
+        this.lastDirtyTimestamp = dirty == null ? 0 : dirty;
+    }
+
+    /**
+     * 注册中心中的实例信息是否与本对象一致
+     */
+    boolean matches(InstanceInfo info) {
+        Long dirty = info.getLastDirtyTimestamp();
+        return id.equals(info.getId()) && lastDirtyTimestamp == (dirty == null ? 0 : dirty);
+    }
+
+    /**
+     * 开始一次调用, 返回开始时间, 调用结束后必须以该值调用 {@link #complete(long, boolean)}
+     *
+     * @return long
+     */
+    public long start() {
+        IN_FLIGHT.incrementAndGet(this);
+        return System.nanoTime();
+    }
+
+    /**
+     * 结束一次调用. 成功时计入耗时并清除失败计数; 失败时不计入耗时, 实例开始退避.
+     * 并发更新时可能丢失个别样本, 对平均值影响可以忽略
+     *
+     * @param success 调用是否成功
+     */
+    public void complete(long startNanos, boolean success) {
+        IN_FLIGHT.decrementAndGet(this);
+        long now = System.nanoTime();
+        if (success) {
+            long avg = latencyNanos;
+            latencyNanos = avg + ((now - startNanos - avg) >> 3);
+            if (failures != 0) {
+                failures = 0;
+            }
+            return;
+        }
+        int n = failures + 1;
+        failures = n;
+        backoffUntilNanos = now + Math.min(MAX_BACKOFF_NANOS, INITIAL_BACKOFF_NANOS << Math.min(n - 1, 7));
+    }
+
+    /**
+     * 选择实例时比较的代价: 平均耗时 x (进行中的调用数 + 1); 退避期间为 Long.MAX_VALUE
+     */
+    long cost() {
+        if (failures != 0 && System.nanoTime() - backoffUntilNanos < 0) {
+            return Long.MAX_VALUE;
+        }
+        return latencyNanos * (inFlight + 1);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 形如 http://host:port, 不带结尾的 /
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,169 @@
+package com.gr.jiang.spring.cloud.discovery;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 进程内的服务注册表视图, 供调用其他服务时在本地选择实例.
+ * <p>
+ * Eureka 客户端每次拉取(增量)注册信息后发出 CacheRefreshedEvent, 此时逐个应用与其快照比较,
+ * 只有实例发生变化的应用才重建快照, 未变化的应用沿用原快照, 未变化的实例沿用原对象以保留调用统计.
+ * 没有变化时快照表不变; 有变化时复制快照表, 只替换变化的应用后整体发布, 读取方不需要加锁.
+ * <p>
+ * EurekaClient 处于 refresh scope 中, 配置刷新后原对象被关闭, 下次使用时重新创建, 原对象上注册的监听随之失效.
+ * 因此在 RefreshScopeRefreshedEvent 后重新注册监听.
+ */
+public class PeerRegistry implements EurekaEventListener, ApplicationListener<RefreshScopeRefreshedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerRegistry.class);
+
+    private final EurekaClient eurekaClient;
+
+    /**
+     * 应用名(大写) -> 快照, 只整体替换
+     */
+    private volatile Map<String, AppSnapshot> snapshots = Collections.emptyMap();
+
+    /**
+     * @param eurekaClient 为null时注册表为空, 只能通过 {@link #refresh(Applications)} 填充
+     */
+    public PeerRegistry(EurekaClient eurekaClient) {
+        this.eurekaClient = eurekaClient;
+        if (eurekaClient != null) {
+            eurekaClient.registerEventListener(this);
+            refresh(eurekaClient.getApplications());
+        }
+    }
+
+    @Override
+    public void onEvent(EurekaEvent event) {
+        if (event instanceof CacheRefreshedEvent) {
+            refresh(eurekaClient.getApplications());
+        }
+    }
+
+    /**
+     * refresh scope 刷新后, 通过代理在新建的 EurekaClient 上重新注册监听并按其注册信息更新快照.
+     * 客户端未被重建时重复注册没有影响
+     */
+    @Override
+    public void onApplicationEvent(RefreshScopeRefreshedEvent event) {
+        if (eurekaClient != null) {
+            eurekaClient.registerEventListener(this);
+            refresh(eurekaClient.getApplications());
+        }
+    }
+
+    public void close() {
+        if (eurekaClient != null) {
+            eurekaClient.unregisterEventListener(this);
+        }
+    }
+
+    /**
+     * 选择指定应用的一个实例
+     *
+     * @param appName 应用名, Eureka 中为大写
+     * @return 没有可用实例时返回null
+     */
+    public PeerInstance choose(String appName) {
+        AppSnapshot s = getSnapshot(appName);
+        return s == null ? null : s.choose();
+    }
+
+    public AppSnapshot getSnapshot(String appName) {
+        Map<String, AppSnapshot> m = snapshots;
+        AppSnapshot s = m.get(appName);
+        if (s == null) {
+            s = m.get(appName.toUpperCase(Locale.ROOT));
+        }
+        return s;
+    }
+
+    public Map<String, AppSnapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * 按最新的注册信息更新快照, 只重建有变化的应用
+     */
+    public synchronized void refresh(Applications applications) {
+        if (applications == null) {
+            return;
+        }
+        Map<String, AppSnapshot> old = snapshots;
+        Map<String, AppSnapshot> next = null;
+        int known = 0;
+        int changed = 0;
+        for (Application app : applications.getRegisteredApplications()) {
+            String name = app.getName().toUpperCase(Locale.ROOT);
+            AppSnapshot prev = old.get(name);
+            if (prev != null) {
+                known++;
+                if (prev.isUnchanged(app)) {
+                    continue;
+                }
+            }
+            if (next == null) {
+                next = new HashMap<String, AppSnapshot>(old);
+            }
+            next.put(name, build(name, prev, app.getInstancesAsIsFromEureka()));
+            changed++;
+        }
+        if (known < old.size()) {
+            // 有应用已从注册中心移除
+            if (next == null) {
+                next = new HashMap<String, AppSnapshot>(old);
+            }
+            for (Iterator<String> it = next.keySet().iterator(); it.hasNext(); ) {
+                if (applications.getRegisteredApplications(it.next()) == null) {
+                    it.remove();
+                    changed++;
+                }
+            }
+        }
+        if (next == null) {
+            return;
+        }
+        snapshots = Collections.unmodifiableMap(next);
+        logger.debug("peer registry refreshed, {} of {} applications changed", changed, next.size());
+    }
+
+    /**
+     * 按应用的实例重建快照, 实例信息未变的沿用原对象
+     */
+    private static AppSnapshot build(String name, AppSnapshot prev, List<InstanceInfo> infos) {
+        Map<String, PeerInstance> byId = new HashMap<String, PeerInstance>();
+        if (prev != null) {
+            for (PeerInstance p : prev.instances()) {
+                byId.put(p.getId(), p);
+            }
+        }
+        List<PeerInstance> up = new ArrayList<PeerInstance>(infos.size());
+        for (InstanceInfo info : infos) {
+            if (info.getStatus() == InstanceInfo.InstanceStatus.UP) {
+                PeerInstance p = byId.get(info.getId());
+                up.add(p != null && p.matches(info) ? p : new PeerInstance(info));
+            }
+        }
+        return new AppSnapshot(name, up.toArray(new PeerInstance[up.size()]),
+                infos.toArray(new InstanceInfo[infos.size()]));
+    }
+}
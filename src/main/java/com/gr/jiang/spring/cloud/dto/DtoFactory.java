@@ -0,0 +1,63 @@
+package com.gr.jiang.spring.cloud.dto;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 按指定Context批量创建请求/响应DTO, 创建的DTO都使用该Context的消息id, 与创建线程当前的Context无关.
+ *
+ * <pre>
+ * DtoFactory&lt;OrgResponseDto&gt; factory = DtoFactory.of(OrgResponseDto::new, ctx);
+ * List&lt;OrgResponseDto&gt; list = factory.create(1000);
+ * </pre>
+ */
+public final class DtoFactory<T extends IBaseDto> {
+
+    private final Supplier<T> supplier;
+
+    private final SystemMessageContext context;
+
+    private DtoFactory(Supplier<T> supplier, SystemMessageContext context) {
+        this.supplier = supplier;
+        this.context = context;
+    }
+
+    /**
+     * @param supplier DTO的构造方法
+     * @param context  DTO绑定的Context, 不能为null
+     */
+    public static <T extends IBaseDto> DtoFactory<T> of(Supplier<T> supplier, SystemMessageContext context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null");
+        }
+        return new DtoFactory<T>(supplier, context);
+    }
+
+    /**
+     * 构造期间把Context压到当前线程栈顶, DTO构造时即取到该Context; 构造完成后弹出, 不改变当前线程原有的Context
+     */
+    public T create() {
+        SystemMessageContext.pushCurrentContext(context);
+        try {
+            return supplier.get();
+        } finally {
+            SystemMessageContext.popCurrentContext();
+        }
+    }
+
+    public List<T> create(int count) {
+        List<T> list = new ArrayList<T>(count);
+        SystemMessageContext.pushCurrentContext(context);
+        try {
+            for (int i = 0; i < count; i++) {
+                list.add(supplier.get());
+            }
+        } finally {
+            SystemMessageContext.popCurrentContext();
+        }
+        return list;
+    }
+}
@@ -2,10 +2,17 @@ package com.gr.jiang.spring.cloud.dto;
 
 import com.gr.jiang.spring.cloud.config.SystemMessageContext;
 
-import java.util.EmptyStackException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 /**
  * 与Service数据传输的请求基类 Created by GaoPopo on 16/7/22.
+ * <p>
+ * 构造时只记录当前线程栈顶的Context, 前置消息id在第一次读取或序列化时才取值. 当前线程没有Context时与原来一样创建并压入一个Context,
+ * 同一线程上的请求和响应DTO因此使用同一个消息id.
+ * <p>
+ * 由其他服务调用时, 前置消息id取Context中调用方的消息id({@link SystemMessageContext#PRE_MSG_ID}).
  */
 public class IRequestDto extends IBaseDto {
     /**
@@ -13,21 +20,40 @@ public class IRequestDto extends IBaseDto {
      */
     private String preMsgId;
 
+    private transient SystemMessageContext context;
+
+    private transient boolean resolved;
+
     public IRequestDto() {
-        try {
-            this.preMsgId = SystemMessageContext.getCurrentContext().getRequestId();
-        } catch (NullPointerException | EmptyStackException e) {
-            SystemMessageContext ctx = SystemMessageContext.createContext("currentContext", null);
-            SystemMessageContext.pushCurrentContext(ctx);
-            this.preMsgId = SystemMessageContext.getCurrentContext().getRequestId();
-        }
+        this.context = SystemMessageContext.getOrCreateCurrentContext();
     }
 
     public String getPreMsgId() {
+        if (!resolved) {
+            String callerId = context.get(SystemMessageContext.PRE_MSG_ID);
+            preMsgId = callerId != null ? callerId : context.getRequestId();
+            context = null;
+            resolved = true;
+        }
         return preMsgId;
     }
 
     public void setPreMsgId(String preMsgId) {
         this.preMsgId = preMsgId;
+        this.context = null;
+        this.resolved = true;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getPreMsgId();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * 序列化前已经取值, 反序列化后沿用流中的id, 不再重新生成
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        resolved = true;
     }
 }
@@ -1,16 +1,23 @@
-
 package com.gr.jiang.spring.cloud.dto;
 
 import com.gr.jiang.spring.cloud.config.SystemMessageContext;
 
-import java.util.EmptyStackException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 /**
  * 与service进行消息传输的响应基类 Created by GaoPopo on 16/7/22.
+ * <p>
+ * 构造时只记录当前线程栈顶的Context, 消息id在第一次读取或序列化时才取值. 当前线程没有Context时与原来一样创建并压入一个Context,
+ * 同一线程上的请求和响应DTO因此使用同一个消息id.
  */
 public class IResponseDto extends IBaseDto {
+    // 服务过载, 请求被限流拒绝
+    public static final String RET_CODE_OVERLOAD = "503";
+
     // 当前消息id
-    private String msgId = SystemMessageContext.getCurrentContext().getRequestId();
+    private String msgId;
 
     // 默认返回成功
     private String retCode = "0";
@@ -18,22 +25,27 @@ public class IResponseDto extends IBaseDto {
     // 默认返回成功
     private String retMsg = "success";
 
+    private transient SystemMessageContext context;
+
+    private transient boolean resolved;
+
     public IResponseDto() {
-        try {
-            this.msgId = SystemMessageContext.getCurrentContext().getRequestId();
-        } catch (NullPointerException | EmptyStackException e) {
-            SystemMessageContext ctx = SystemMessageContext.createContext("currentContext", null);
-            SystemMessageContext.pushCurrentContext(ctx);
-            this.msgId = SystemMessageContext.getCurrentContext().getRequestId();
-        }
+        this.context = SystemMessageContext.getOrCreateCurrentContext();
     }
 
     public String getMsgId() {
+        if (!resolved) {
+            msgId = context.getRequestId();
+            context = null;
+            resolved = true;
+        }
         return msgId;
     }
 
     public void setMsgId(String msgId) {
         this.msgId = msgId;
+        this.context = null;
+        this.resolved = true;
     }
 
     public String getRetCode() {
@@ -51,4 +63,17 @@ public class IResponseDto extends IBaseDto {
     public void setRetMsg(String retMsg) {
         this.retMsg = retMsg;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMsgId();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * 序列化前已经取值, 反序列化后沿用流中的id, 不再重新生成
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        resolved = true;
+    }
 }
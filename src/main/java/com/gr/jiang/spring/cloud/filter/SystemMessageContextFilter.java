@@ -0,0 +1,50 @@
+package com.gr.jiang.spring.cloud.filter;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 为每个请求创建并绑定SystemMessageContext, 请求结束时出栈并从根Context摘除, 防止根Context的子节点无限增长.
+ * <p>
+ * 由其他服务调用时, 调用方的消息id通过 {@link #PRE_MSG_ID_HEADER} 请求头传入, 记录在新Context的
+ * {@link SystemMessageContext#PRE_MSG_ID} 中, 请求内创建的请求DTO以此作为前置消息id.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SystemMessageContextFilter extends OncePerRequestFilter {
+
+    /**
+     * 传递调用方消息id的请求头
+     */
+    public static final String PRE_MSG_ID_HEADER = "X-Pre-Msg-Id";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SystemMessageContext ctx = SystemMessageContext.createContext("currentContext", null);
+        String preMsgId = request.getHeader(PRE_MSG_ID_HEADER);
+        if (preMsgId != null) {
+            ctx.set(SystemMessageContext.PRE_MSG_ID, preMsgId);
+        }
+        SystemMessageContext.pushCurrentContext(ctx);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // 连同请求中多压入而未弹出的Context一起出栈
+            SystemMessageContext top;
+            do {
+                top = SystemMessageContext.popCurrentContext();
+            } while (top != null && top != ctx);
+            ctx.clear();
+        }
+    }
+}
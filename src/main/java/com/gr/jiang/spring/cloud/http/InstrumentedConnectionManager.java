@@ -0,0 +1,59 @@
+package com.gr.jiang.spring.cloud.http;
+
+import com.gr.jiang.spring.cloud.metrics.LatencyHistogram;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录从连接池取连接的等待时间和超时次数的连接池
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final LatencyHistogram leaseWait = new LatencyHistogram();
+
+    private final LongAdder leaseTimeouts = new LongAdder();
+
+    public InstrumentedConnectionManager(long timeToLive, TimeUnit unit) {
+        super(timeToLive, unit);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit unit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.get(timeout, unit);
+                } catch (ConnectionPoolTimeoutException e) {
+                    leaseTimeouts.increment();
+                    throw e;
+                } finally {
+                    leaseWait.record(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    public LatencyHistogram getLeaseWait() {
+        return leaseWait;
+    }
+
+    public long getLeaseTimeouts() {
+        return leaseTimeouts.sum();
+    }
+}
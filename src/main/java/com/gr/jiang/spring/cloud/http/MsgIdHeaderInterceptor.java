@@ -0,0 +1,25 @@
+package com.gr.jiang.spring.cloud.http;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.filter.SystemMessageContextFilter;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 将当前线程 SystemMessageContext 的 requestId 作为前置消息id放入请求头, 请求已带该头时不覆盖
+ */
+public class MsgIdHeaderInterceptor implements HttpRequestInterceptor {
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        if (request.containsHeader(SystemMessageContextFilter.PRE_MSG_ID_HEADER)) {
+            return;
+        }
+        SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+        String id = ctx == null ? null : ctx.getRequestId();
+        if (id != null) {
+            request.addHeader(SystemMessageContextFilter.PRE_MSG_ID_HEADER, id);
+        }
+    }
+}
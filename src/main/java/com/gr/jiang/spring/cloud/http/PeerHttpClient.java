@@ -0,0 +1,92 @@
+package com.gr.jiang.spring.cloud.http;
+
+import com.gr.jiang.spring.cloud.discovery.PeerInstance;
+import com.gr.jiang.spring.cloud.discovery.PeerRegistry;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * 调用其他服务的 HTTP 客户端, 底层为长连接池. 每个请求自动带上当前 Context 的消息id,
+ * 按应用名调用时从 {@link PeerRegistry} 选择实例并记录该实例的调用耗时和结果.
+ */
+public class PeerHttpClient {
+
+    private static final ResponseHandler<String> STRING_HANDLER = new BasicResponseHandler();
+
+    private final CloseableHttpClient httpClient;
+
+    private final InstrumentedConnectionManager connectionManager;
+
+    private final PeerRegistry registry;
+
+    public PeerHttpClient(CloseableHttpClient httpClient, InstrumentedConnectionManager connectionManager,
+                          PeerRegistry registry) {
+        this.httpClient = httpClient;
+        this.connectionManager = connectionManager;
+        this.registry = registry;
+    }
+
+    public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> handler) throws IOException {
+        return httpClient.execute(request, handler);
+    }
+
+    /**
+     * GET 指定应用的 path, 返回响应体. 非2xx响应抛出 HttpResponseException
+     *
+     * @param appName 应用名
+     * @param path    以 / 开头的路径
+     */
+    public String getString(String appName, String path) throws IOException {
+        return execute(appName, new HttpGet(), path, STRING_HANDLER);
+    }
+
+    /**
+     * 在指定应用选出的实例上执行请求, request 的 URI 由实例地址和 path 组成.
+     * 连接失败、超时和5xx响应计为实例的失败调用, 4xx响应是请求本身的问题, 按成功计
+     */
+    public <T> T execute(String appName, HttpRequestBase request, String path,
+                         ResponseHandler<? extends T> handler) throws IOException {
+        PeerInstance instance = registry.choose(appName);
+        if (instance == null) {
+            throw new IllegalStateException("no available instance of " + appName);
+        }
+        request.setURI(URI.create(instance.getBaseUrl() + path));
+        long start = instance.start();
+        boolean success = false;
+        try {
+            T result = httpClient.execute(request, handler);
+            success = true;
+            return result;
+        } catch (HttpResponseException e) {
+            success = e.getStatusCode() < 500;
+            throw e;
+        } finally {
+            instance.complete(start, success);
+        }
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public InstrumentedConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.gr.jiang.spring.cloud.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数分桶延迟直方图(HDR风格), 单位纳秒.
+ * <p>
+ * 每个2的幂区间再均分为8个子桶, 相对误差不超过12.5%. 记录一次只做一次数组下标计算和三次原子累加, 不分配对象.
+ * 每个桶可保存一个样例(exemplar), 如最近一次落入该桶的慢请求的requestId.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicReferenceArray<String> exemplars = new AtomicReferenceArray<String>(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * 桶的下界(含)
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << (exp - SUB_BITS);
+    }
+
+    /**
+     * 桶的上界(含)
+     */
+    static long upperBound(int bucket) {
+        return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulate(nanos);
+        }
+    }
+
+    /**
+     * 记录一个样本并保存其样例
+     */
+    public void record(long nanos, String exemplar) {
+        int bucket = bucketOf(nanos);
+        counts.incrementAndGet(bucket);
+        exemplars.lazySet(bucket, exemplar);
+        count.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulate(nanos);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 百分位数的近似值(所在桶的上界), 没有样本时返回0
+     *
+     * @param percentile 0 ~ 100
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 不小于 nanos 的样本中最近保存的样例
+     */
+    public String getExemplarAbove(long nanos) {
+        for (int i = BUCKETS - 1; i >= bucketOf(nanos); i--) {
+            String e = exemplars.get(i);
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 小于等于 nanos 的样本数
+     */
+    public long countAtOrBelow(long nanos) {
+        long n = 0;
+        int last = bucketOf(nanos);
+        for (int i = 0; i <= last; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,276 @@
+package com.gr.jiang.spring.cloud.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.gr.jiang.spring.cloud.aop.AdaptiveLimiter;
+import com.gr.jiang.spring.cloud.aop.ICommonServiceAspect;
+import com.gr.jiang.spring.cloud.aop.ServiceBulkheadAdvisor;
+import com.gr.jiang.spring.cloud.config.ContextKey;
+import com.gr.jiang.spring.cloud.config.InstrumentedTaskDecorator;
+import com.gr.jiang.spring.cloud.http.PeerHttpClient;
+import com.gr.jiang.spring.cloud.service.OrgResultCache;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按接口(Controller映射)统计请求数、耗时分布和响应 retCode 分布, 并以 Prometheus 文本格式输出.
+ * <p>
+ * 计数使用 LongAdder 分段累加, 记录时不加锁. 每个序列的名称和标签在第一次出现时拼好, 输出时直接复用.
+ */
+@Component
+public class RequestMetrics {
+
+    /**
+     * 当前请求所属接口的统计, 由 RequestMetricsInterceptor 写入Context, 服务层据此记录 retCode
+     */
+    public static final ContextKey<EndpointStats> ENDPOINT = ContextKey.register("metrics.endpoint", EndpointStats.class);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+
+    private static final String[] POOL_WAIT_QUANTILE_LABELS = quantileLabels("{}");
+
+    private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<String, EndpointStats>();
+
+    @Autowired(required = false)
+    ICommonServiceAspect serviceAspect;
+
+    @Autowired(required = false)
+    ServiceBulkheadAdvisor bulkhead;
+
+    @Autowired(required = false)
+    PeerHttpClient peerHttpClient;
+
+    @Autowired(required = false)
+    InstrumentedTaskDecorator orgTaskDecorator;
+
+    @Autowired(required = false)
+    OrgResultCache orgResultCache;
+
+    private final ConcurrentHashMap<Class<?>, String> serviceLabels = new ConcurrentHashMap<Class<?>, String>();
+
+    private final ConcurrentHashMap<Method, SeriesLabels> methodLabels = new ConcurrentHashMap<Method, SeriesLabels>();
+
+    /**
+     * 取接口的统计, 不存在时创建
+     *
+     * @param pattern Controller 映射路径, 如 /org/detail
+     */
+    public EndpointStats endpoint(String pattern) {
+        EndpointStats stats = endpoints.get(pattern);
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(pattern, EndpointStats::new);
+        }
+        return stats;
+    }
+
+    /**
+     * 按 Prometheus 文本格式(0.0.4)写出所有指标
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE http_requests_total counter\n");
+        for (EndpointStats s : endpoints.values()) {
+            out.append("http_requests_total").append(s.labels).append(' ').append(s.requests.sum()).append('\n');
+        }
+        out.append("# TYPE http_request_duration_seconds summary\n");
+        for (EndpointStats s : endpoints.values()) {
+            writeSummary(out, "http_request_duration_seconds", s.quantileLabels, s.labels, s.latency);
+        }
+        out.append("# TYPE service_responses_total counter\n");
+        for (EndpointStats s : endpoints.values()) {
+            for (RetCodeCounter c : s.retCodes.values()) {
+                out.append("service_responses_total").append(c.labels).append(' ').append(c.count.sum()).append('\n');
+            }
+        }
+        if (serviceAspect != null) {
+            out.append("# TYPE service_method_duration_seconds summary\n");
+            for (Map.Entry<Method, LatencyHistogram> e : serviceAspect.getHistograms().entrySet()) {
+                SeriesLabels labels = methodLabels.get(e.getKey());
+                if (labels == null) {
+                    labels = methodLabels.computeIfAbsent(e.getKey(), RequestMetrics::methodLabels);
+                }
+                writeSummary(out, "service_method_duration_seconds", labels.quantiles, labels.labels, e.getValue());
+            }
+        }
+        if (bulkhead != null) {
+            out.append("# TYPE service_concurrency_limit gauge\n");
+            for (Map.Entry<Class<?>, AdaptiveLimiter> e : bulkhead.getLimiters().entrySet()) {
+                String labels = serviceLabels(e.getKey());
+                out.append("service_concurrency_limit").append(labels).append(' ').append(e.getValue().getLimit()).append('\n');
+            }
+            out.append("# TYPE service_in_flight gauge\n");
+            for (Map.Entry<Class<?>, AdaptiveLimiter> e : bulkhead.getLimiters().entrySet()) {
+                String labels = serviceLabels(e.getKey());
+                out.append("service_in_flight").append(labels).append(' ').append(e.getValue().getInFlight()).append('\n');
+            }
+        }
+        if (peerHttpClient != null) {
+            PoolStats pool = peerHttpClient.getPoolStats();
+            out.append("# TYPE peer_http_pool_connections gauge\n");
+            out.append("peer_http_pool_connections{state=\"leased\"} ").append(pool.getLeased()).append('\n');
+            out.append("peer_http_pool_connections{state=\"available\"} ").append(pool.getAvailable()).append('\n');
+            out.append("# TYPE peer_http_pool_pending gauge\n");
+            out.append("peer_http_pool_pending ").append(pool.getPending()).append('\n');
+            out.append("# TYPE peer_http_pool_max gauge\n");
+            out.append("peer_http_pool_max ").append(pool.getMax()).append('\n');
+            out.append("# TYPE peer_http_pool_wait_seconds summary\n");
+            writeSummary(out, "peer_http_pool_wait_seconds", POOL_WAIT_QUANTILE_LABELS, "",
+                    peerHttpClient.getConnectionManager().getLeaseWait());
+            out.append("# TYPE peer_http_pool_wait_timeouts_total counter\n");
+            out.append("peer_http_pool_wait_timeouts_total ")
+                    .append(peerHttpClient.getConnectionManager().getLeaseTimeouts()).append('\n');
+        }
+        if (orgTaskDecorator != null) {
+            out.append("# TYPE org_async_tasks_total counter\n");
+            out.append("org_async_tasks_total{state=\"submitted\"} ").append(orgTaskDecorator.getSubmitted()).append('\n');
+            out.append("org_async_tasks_total{state=\"rejected\"} ").append(orgTaskDecorator.getRejected()).append('\n');
+            out.append("org_async_tasks_total{state=\"completed\"} ").append(orgTaskDecorator.getCompleted()).append('\n');
+            out.append("org_async_tasks_total{state=\"failed\"} ").append(orgTaskDecorator.getFailed()).append('\n');
+            out.append("# TYPE org_async_task_queue_seconds_total counter\n");
+            appendSeconds(out.append("org_async_task_queue_seconds_total "), orgTaskDecorator.getQueueNanos()).append('\n');
+            out.append("# TYPE org_async_task_run_seconds_total counter\n");
+            appendSeconds(out.append("org_async_task_run_seconds_total "), orgTaskDecorator.getRunNanos()).append('\n');
+        }
+        if (orgResultCache != null) {
+            CacheStats stats = orgResultCache.getStats();
+            out.append("# TYPE org_cache_requests_total counter\n");
+            out.append("org_cache_requests_total{result=\"hit\"} ").append(stats.hitCount()).append('\n');
+            out.append("org_cache_requests_total{result=\"miss\"} ").append(stats.missCount()).append('\n');
+            out.append("# TYPE org_cache_evictions_total counter\n");
+            out.append("org_cache_evictions_total ").append(stats.evictionCount()).append('\n');
+            out.append("# TYPE org_cache_evicted_weight_total counter\n");
+            out.append("org_cache_evicted_weight_total ").append(stats.evictionWeight()).append('\n');
+            out.append("# TYPE org_cache_size gauge\n");
+            out.append("org_cache_size ").append(orgResultCache.getSize()).append('\n');
+            long executed = orgResultCache.getLoads().getExecutions();
+            long calls = orgResultCache.getLoads().getCalls();
+            out.append("# TYPE org_cache_loads_total counter\n");
+            out.append("org_cache_loads_total{outcome=\"executed\"} ").append(executed).append('\n');
+            out.append("org_cache_loads_total{outcome=\"coalesced\"} ").append(Math.max(calls - executed, 0)).append('\n');
+            out.append("# TYPE org_cache_load_coalescing_ratio gauge\n");
+            out.append("org_cache_load_coalescing_ratio ")
+                    .append(calls == 0 ? 0 : (double) Math.max(calls - executed, 0) / calls).append('\n');
+        }
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String[] quantileLabels, String labels,
+                                     LatencyHistogram h) {
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.append(name).append(quantileLabels[i]).append(' ');
+            appendSeconds(out, h.getPercentile(QUANTILES[i] * 100)).append('\n');
+        }
+        out.append(name).append("_sum").append(labels).append(' ');
+        appendSeconds(out, h.getSum()).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(h.getCount()).append('\n');
+    }
+
+    /**
+     * 纳秒按秒输出, 保留9位小数, 不经过 double 转换
+     */
+    private static StringBuilder appendSeconds(StringBuilder out, long nanos) {
+        out.append(nanos / 1000000000L).append('.');
+        long frac = nanos % 1000000000L;
+        for (long d = 100000000L; d > 0; d /= 10) {
+            out.append((char) ('0' + frac / d % 10));
+        }
+        return out;
+    }
+
+    private String serviceLabels(Class<?> service) {
+        String labels = serviceLabels.get(service);
+        if (labels == null) {
+            labels = serviceLabels.computeIfAbsent(service, c -> "{service=\"" + escape(c.getSimpleName()) + "\"}");
+        }
+        return labels;
+    }
+
+    private static SeriesLabels methodLabels(Method m) {
+        return new SeriesLabels("{method=\"" + escape(m.getDeclaringClass().getSimpleName() + "." + m.getName()) + "\"}");
+    }
+
+    private static String[] quantileLabels(String labels) {
+        String[] q = new String[QUANTILES.length];
+        String inner = labels.substring(1, labels.length() - 1);
+        for (int i = 0; i < q.length; i++) {
+            q[i] = "{" + inner + (inner.isEmpty() ? "" : ",") + "quantile=\"" + QUANTILE_LABELS[i] + "\"}";
+        }
+        return q;
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * 一个 summary 序列的标签, 以及加上各分位数后的标签, 第一次出现时拼好
+     */
+    static final class SeriesLabels {
+        final String labels;
+
+        final String[] quantiles;
+
+        SeriesLabels(String labels) {
+            this.labels = labels;
+            this.quantiles = quantileLabels(labels);
+        }
+    }
+
+    /**
+     * 单个接口的统计
+     */
+    public static final class EndpointStats {
+        final String uri;
+
+        final String labels;
+
+        final String[] quantileLabels;
+
+        final LongAdder requests = new LongAdder();
+
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        final ConcurrentHashMap<String, RetCodeCounter> retCodes = new ConcurrentHashMap<String, RetCodeCounter>();
+
+        EndpointStats(String uri) {
+            this.uri = uri;
+            this.labels = "{uri=\"" + escape(uri) + "\"}";
+            this.quantileLabels = quantileLabels(labels);
+        }
+
+        /**
+         * 记录一次请求及其耗时
+         */
+        public void recordRequest(long nanos) {
+            requests.increment();
+            latency.record(nanos);
+        }
+
+        /**
+         * 记录一次服务响应的 retCode
+         */
+        public void recordRetCode(String retCode) {
+            String code = retCode == null ? "" : retCode;
+            RetCodeCounter c = retCodes.get(code);
+            if (c == null) {
+                c = retCodes.computeIfAbsent(code, k -> new RetCodeCounter(uri, k));
+            }
+            c.count.increment();
+        }
+    }
+
+    static final class RetCodeCounter {
+        final String labels;
+
+        final LongAdder count = new LongAdder();
+
+        RetCodeCounter(String uri, String retCode) {
+            this.labels = "{uri=\"" + escape(uri) + "\",retCode=\"" + escape(retCode) + "\"}";
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.gr.jiang.spring.cloud.metrics;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 按Controller映射路径记录请求数和耗时, 并把接口统计放入当前Context供服务层记录 retCode.
+ * 异步请求从第一次进入到异步分派结束计为一次请求.
+ */
+@Component
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".START";
+
+    private static final String STATS = RequestMetricsInterceptor.class.getName() + ".STATS";
+
+    @Autowired
+    RequestMetrics requestMetrics;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestMetrics.EndpointStats stats = (RequestMetrics.EndpointStats) request.getAttribute(STATS);
+        if (stats == null) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern == null) {
+                return true;
+            }
+            stats = requestMetrics.endpoint(pattern.toString());
+            request.setAttribute(STATS, stats);
+            request.setAttribute(START, System.nanoTime());
+        }
+        SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+        if (ctx != null) {
+            ctx.set(RequestMetrics.ENDPOINT, stats);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestMetrics.EndpointStats stats = (RequestMetrics.EndpointStats) request.getAttribute(STATS);
+        Long start = (Long) request.getAttribute(START);
+        if (stats != null && start != null) {
+            stats.recordRequest(System.nanoTime() - start);
+        }
+    }
+}
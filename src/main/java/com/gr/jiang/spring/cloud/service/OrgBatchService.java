@@ -0,0 +1,127 @@
+package com.gr.jiang.spring.cloud.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gr.jiang.spring.cloud.aop.BulkheadExempt;
+import com.gr.jiang.spring.cloud.config.ContextForkJoinPool;
+import com.gr.jiang.spring.cloud.config.ContextSnapshot;
+import com.gr.jiang.spring.cloud.dto.impl.OrgRequestDto;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 批量查询机构: 按块并行调用 OrgService, 每块完成后立即以NDJSON(每行一个JSON)写出.
+ * <p>
+ * 同时执行的块数不超过线程池并行度的两倍, 内存占用与请求的id个数无关. 每行带有请求的id, 行的顺序为块完成的顺序.
+ * 某块失败或写出失败(客户端断开)时取消其余尚未完成的块.
+ * <p>
+ * 耗时与id个数成正比且在响应流中执行, 本身不限流; 对 OrgService 的每次调用仍由 OrgService 的限流器限制.
+ */
+@Service
+@BulkheadExempt
+public class OrgBatchService {
+
+    @Autowired
+    OrgService orgService;
+
+    @Autowired
+    ContextForkJoinPool orgBatchPool;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${org.batch.chunk-size:256}")
+    int chunkSize;
+
+    private static final byte[] NL = {'\n'};
+
+    public void stream(List<String> ids, ContextSnapshot snapshot, OutputStream out) throws IOException {
+        CompletionService<List<Map<String, Object>>> completion =
+                new ExecutorCompletionService<List<Map<String, Object>>>(orgBatchPool);
+        Set<Future<List<Map<String, Object>>>> inFlight = new HashSet<Future<List<Map<String, Object>>>>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        int maxInFlight = orgBatchPool.getParallelism() * 2;
+        int next = 0;
+        try {
+            while (next < ids.size() || !inFlight.isEmpty()) {
+                while (next < ids.size() && inFlight.size() < maxInFlight) {
+                    int end = Math.min(next + chunkSize, ids.size());
+                    inFlight.add(completion.submit(snapshot.wrapCallable(handleChunk(ids.subList(next, end), cancelled))));
+                    next = end;
+                }
+                Future<List<Map<String, Object>>> done;
+                List<Map<String, Object>> chunk;
+                try {
+                    done = completion.take();
+                    chunk = done.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("batch interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("batch chunk failed", e.getCause());
+                }
+                inFlight.remove(done);
+                for (Map<String, Object> line : chunk) {
+                    out.write(objectMapper.writeValueAsBytes(line));
+                    out.write(NL);
+                }
+                // 客户端断开时 write/flush 抛出 IOException, 由 finally 取消其余的块
+                out.flush();
+            }
+        } finally {
+            if (!inFlight.isEmpty()) {
+                cancelled.set(true);
+                for (Future<?> f : inFlight) {
+                    f.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按块内id顺序查询并生成输出行; cancelled 置位后不再查询剩余的id
+     */
+    private Callable<List<Map<String, Object>>> handleChunk(final List<String> ids, final AtomicBoolean cancelled) {
+        return new Callable<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> call() {
+                List<Map<String, Object>> lines = new ArrayList<Map<String, Object>>(ids.size());
+                for (String id : ids) {
+                    if (cancelled.get()) {
+                        throw new CancellationException("batch cancelled");
+                    }
+                    OrgRequestDto reqDto = new OrgRequestDto();
+                    reqDto.setId(id);
+                    lines.add(toLine(id, orgService.handle(reqDto)));
+                }
+                return lines;
+            }
+        };
+    }
+
+    private static Map<String, Object> toLine(String id, OrgResponseDto resDto) {
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("id", id);
+        line.put("msgId", resDto.getMsgId());
+        line.put("retCode", resDto.getRetCode());
+        line.put("retMsg", resDto.getRetMsg());
+        line.put("result", resDto.getResult());
+        return line;
+    }
+}
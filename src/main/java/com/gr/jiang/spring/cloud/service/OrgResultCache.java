@@ -0,0 +1,177 @@
+package com.gr.jiang.spring.cloud.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.gr.jiang.spring.cloud.config.SingleFlight;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * OrgService.handle 结果的进程内缓存, key为机构id.
+ * <p>
+ * 基于 Caffeine(W-TinyLFU 准入策略), 支持过期时间、按权重淘汰和主动失效. 未命中时同一id的并发请求只计算一次
+ * (见 {@link SingleFlight}). 缓存中只保存结果字段, 每个调用方都新建一个 OrgResponseDto, 其 msgId 取自调用方当前的Context.
+ */
+@Component
+public class OrgResultCache {
+
+    @Value("${org.cache.ttl-seconds:60}")
+    long ttlSeconds;
+
+    /**
+     * 缓存的最大权重, 权重为结果字符串的长度
+     */
+    @Value("${org.cache.max-weight:10000000}")
+    long maxWeight;
+
+    private Cache<String, OrgResult> cache;
+
+    private final SingleFlight<String, OrgResult> loads = new SingleFlight<String, OrgResult>();
+
+    /**
+     * 失效计数, 按id的hash分段; 加载前记录, 加载期间被失效的结果不写入缓存. 不同id落在同一段时只会多放弃一次写入
+     */
+    private static final int GENERATION_STRIPES = 64;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final AtomicLong allGeneration = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumWeight(maxWeight)
+                .weigher(new Weigher<String, OrgResult>() {
+                    public int weigh(String key, OrgResult value) {
+                        return key.length() + value.weight();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 取缓存的结果, 未命中时调用 loader 计算, 同一id的并发未命中只调用一次 loader. 只缓存 retCode 为 "0" 的结果
+     * <p>
+     * 不使用 Caffeine 的 cache.get(id, fn): 它在 ConcurrentHashMap 的 compute 中执行 loader, 加载期间持有桶锁,
+     * 落在同一个桶中的其他id也会被阻塞; 而且 loader 返回失败结果(不缓存)时无法把结果交给同时等待的调用方,
+     * 这些调用方会逐个重新加载. SingleFlight 在锁外加载, 成功和失败的结果都由同一id的并发调用方共享.
+     * 加载开始后该id被 {@link #invalidate(String)} 或 {@link #invalidateAll()} 失效时, 结果仍返回给调用方, 但不留在缓存中.
+     *
+     * @param id     机构id, 为null时不使用缓存
+     * @param loader 未命中时的计算方法
+     * @return 新建的 OrgResponseDto
+     */
+    public OrgResponseDto get(final String id, final Function<String, OrgResponseDto> loader) {
+        if (id == null) {
+            return loader.apply(null);
+        }
+        OrgResult result = cache.getIfPresent(id);
+        if (result == null) {
+            result = loads.execute(id, new Supplier<OrgResult>() {
+                public OrgResult get() {
+                    long generation = generation(id);
+                    OrgResult loaded = new OrgResult(loader.apply(id));
+                    if ("0".equals(loaded.retCode) && generation(id) == generation) {
+                        cache.put(id, loaded);
+                        // 失效先增加计数再删除: 检查之后才增加计数的失效会删除刚写入的值, 否则由这里撤回
+                        if (generation(id) != generation) {
+                            cache.asMap().remove(id, loaded);
+                        }
+                    }
+                    return loaded;
+                }
+            });
+        }
+        return result.toResponse();
+    }
+
+    public void invalidate(String id) {
+        generations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private long generation(String id) {
+        return allGeneration.get() + generations.get(stripe(id));
+    }
+
+    private static int stripe(String id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * 命中、未命中、淘汰等计数的快照, 各项取自同一时刻
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * 未命中时合并的加载统计
+     */
+    public SingleFlight<String, OrgResult> getLoads() {
+        return loads;
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 缓存的结果字段, 不可变
+     */
+    static final class OrgResult {
+        final String result;
+
+        final String retCode;
+
+        final String retMsg;
+
+        OrgResult(OrgResponseDto resDto) {
+            this.result = resDto.getResult();
+            this.retCode = resDto.getRetCode();
+            this.retMsg = resDto.getRetMsg();
+        }
+
+        int weight() {
+            return result == null ? 1 : result.length() + 1;
+        }
+
+        OrgResponseDto toResponse() {
+            OrgResponseDto resDto = new OrgResponseDto();
+            resDto.setResult(result);
+            resDto.setRetCode(retCode);
+            resDto.setRetMsg(retMsg);
+            return resDto;
+        }
+    }
+}
@@ -2,17 +2,30 @@ package com.gr.jiang.spring.cloud.service;
 
 import com.gr.jiang.spring.cloud.dto.impl.OrgRequestDto;
 import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.function.Function;
+
 /**
  * Created by jiang on 2017/5/9.
  */
 @Service
 public class OrgService {
 
+    @Autowired
+    OrgResultCache orgResultCache;
+
     public OrgResponseDto handle(OrgRequestDto requestDto){
+        return orgResultCache.get(requestDto.getId(), new Function<String, OrgResponseDto>() {
+            public OrgResponseDto apply(String id) {
+                return load(id);
+            }
+        });
+    }
+
+    private OrgResponseDto load(String id){
         OrgResponseDto responseDto = new OrgResponseDto();
-        String id = requestDto.getId();
         responseDto.setResult(id+" result");
         return responseDto;
     }
@@ -0,0 +1,139 @@
+package com.gr.jiang.spring.cloud.startup;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.cloud.bootstrap.config.PropertySourceLocator;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+
+/**
+ * 记录每个bean从实例化到初始化完成的耗时. 创建bean时依赖的其他bean也在同一线程中创建,
+ * 用线程内的栈扣除依赖bean的时间得到bean自身的耗时.
+ * <p>
+ * 同时记录 PropertySourceLocator(配置中心客户端)拉取配置的耗时.
+ */
+class BeanTimingPostProcessor extends InstantiationAwareBeanPostProcessorAdapter {
+
+    private static final ThreadLocal<ArrayDeque<Frame>> STACK = new ThreadLocal<ArrayDeque<Frame>>() {
+        @Override
+        protected ArrayDeque<Frame> initialValue() {
+            return new ArrayDeque<Frame>();
+        }
+    };
+
+    private final String context;
+
+    private final ConfigurableListableBeanFactory beanFactory;
+
+    private final Set<String> autoConfigurations;
+
+    BeanTimingPostProcessor(String context, ConfigurableListableBeanFactory beanFactory, Set<String> autoConfigurations) {
+        this.context = context;
+        this.beanFactory = beanFactory;
+        this.autoConfigurations = autoConfigurations;
+    }
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        STACK.get().push(new Frame(beanName, System.nanoTime()));
+        return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        ArrayDeque<Frame> stack = STACK.get();
+        Frame frame = null;
+        // 创建失败的bean不会走到这里, 连同其栈帧一起丢弃
+        while (!stack.isEmpty()) {
+            Frame f = stack.pop();
+            if (f.name.equals(beanName)) {
+                frame = f;
+                break;
+            }
+        }
+        if (frame == null) {
+            return bean;
+        }
+        long total = System.nanoTime() - frame.start;
+        Frame parent = stack.peek();
+        if (parent != null) {
+            parent.children += total;
+        }
+        String configuration = configurationOf(beanName);
+        StartupTimeline.get().bean(new StartupTimeline.BeanTiming(context, beanName, configuration,
+                configuration != null && autoConfigurations.contains(configuration), total - frame.children, total));
+
+        if (bean instanceof PropertySourceLocator) {
+            return timed(bean);
+        }
+        return bean;
+    }
+
+    /**
+     * 定义bean的配置类(内部类归到外部类), 配置类本身归到自己
+     */
+    private String configurationOf(String beanName) {
+        if (!beanFactory.containsBeanDefinition(beanName)) {
+            return null;
+        }
+        try {
+            BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+            String className = bd.getBeanClassName();
+            if (bd.getFactoryBeanName() != null && beanFactory.containsBeanDefinition(bd.getFactoryBeanName())) {
+                className = beanFactory.getMergedBeanDefinition(bd.getFactoryBeanName()).getBeanClassName();
+            } else if (className == null || !autoConfigurations.contains(outer(className))) {
+                return null;
+            }
+            return className == null ? null : outer(className);
+        } catch (NoSuchBeanDefinitionException e) {
+            return null;
+        }
+    }
+
+    private static String outer(String className) {
+        int i = className.indexOf('$');
+        return i < 0 ? className : className.substring(0, i);
+    }
+
+    /**
+     * 保持原类型的代理, 记录 locate 的耗时
+     */
+    private Object timed(Object locator) {
+        ProxyFactory pf = new ProxyFactory(locator);
+        pf.setProxyTargetClass(true);
+        pf.addAdvice((MethodInterceptor) invocation -> {
+            if (!"locate".equals(invocation.getMethod().getName())) {
+                return invocation.proceed();
+            }
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                // locator 属于引导上下文, 但由应用上下文的初始化器调用
+                StartupTimeline.get().phase("application", "config-server fetch ("
+                        + ClassUtils.getShortName(ClassUtils.getUserClass(locator)) + ")", start, System.nanoTime());
+            }
+        });
+        return pf.getProxy(locator.getClass().getClassLoader());
+    }
+
+    private static final class Frame {
+        final String name;
+
+        final long start;
+
+        long children;
+
+        Frame(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.gr.jiang.spring.cloud.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时间线报告: 进程启动到就绪的总耗时, 各阶段耗时, 耗时最多的bean和配置类.
+ * <p>
+ * 摘要写入日志; 设置 startup.report.file 时同时以JSON写入该文件, 供 gradle startupCompare 对比.
+ * startup.report.top 为列出的bean和配置类个数, 默认20.
+ */
+class StartupReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupReport.class);
+
+    private final StartupTimeline timeline;
+
+    private final Environment environment;
+
+    StartupReport(StartupTimeline timeline, Environment environment) {
+        this.timeline = timeline;
+        this.environment = environment;
+    }
+
+    void write() {
+        int top = environment.getProperty("startup.report.top", Integer.class, 20);
+        Map<String, Object> report = build(top);
+        logger.info(text(report));
+        String file = environment.getProperty("startup.report.file");
+        if (file != null && !file.isEmpty()) {
+            try {
+                File f = new File(file);
+                if (f.getParentFile() != null) {
+                    f.getParentFile().mkdirs();
+                }
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(f, report);
+            } catch (IOException e) {
+                logger.warn("failed to write startup report to {}", file, e);
+            }
+        }
+    }
+
+    Map<String, Object> build(int top) {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("readyMillis", millis(timeline.sinceJvmStart()));
+        report.put("loadedClasses", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        report.put("classDataSharing", classDataSharing());
+        report.put("javaVersion", System.getProperty("java.version"));
+
+        List<Map<String, Object>> phases = new ArrayList<Map<String, Object>>();
+        for (StartupTimeline.Phase p : timeline.getPhases()) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("context", p.getContext());
+            m.put("name", p.getName());
+            m.put("atMillis", millis(p.getOffsetNanos()));
+            m.put("millis", millis(p.getDurationNanos()));
+            phases.add(m);
+        }
+        report.put("phases", phases);
+
+        List<StartupTimeline.BeanTiming> beans = timeline.getBeans();
+        long beanTotal = 0;
+        Map<String, long[]> byConfiguration = new HashMap<String, long[]>();
+        Map<String, Boolean> auto = new HashMap<String, Boolean>();
+        for (StartupTimeline.BeanTiming b : beans) {
+            beanTotal += b.getSelfNanos();
+            String key = b.getConfiguration() == null ? "(component scan)" : b.getConfiguration();
+            long[] acc = byConfiguration.get(key);
+            if (acc == null) {
+                acc = new long[2];
+                byConfiguration.put(key, acc);
+                auto.put(key, b.isAutoConfiguration());
+            }
+            acc[0] += b.getSelfNanos();
+            acc[1]++;
+        }
+        report.put("beanCount", beans.size());
+        report.put("beanMillis", millis(beanTotal));
+
+        beans.sort(Comparator.comparingLong(StartupTimeline.BeanTiming::getSelfNanos).reversed());
+        List<Map<String, Object>> topBeans = new ArrayList<Map<String, Object>>();
+        for (StartupTimeline.BeanTiming b : beans.subList(0, Math.min(top, beans.size()))) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("context", b.getContext());
+            m.put("bean", b.getName());
+            m.put("selfMillis", millis(b.getSelfNanos()));
+            m.put("totalMillis", millis(b.getTotalNanos()));
+            m.put("configuration", b.getConfiguration());
+            topBeans.add(m);
+        }
+        report.put("beans", topBeans);
+
+        List<Map.Entry<String, long[]>> configs = new ArrayList<Map.Entry<String, long[]>>(byConfiguration.entrySet());
+        configs.sort((x, y) -> Long.compare(y.getValue()[0], x.getValue()[0]));
+        List<Map<String, Object>> topConfigs = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, long[]> e : configs.subList(0, Math.min(top, configs.size()))) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("configuration", e.getKey());
+            m.put("autoConfiguration", auto.get(e.getKey()));
+            m.put("beans", e.getValue()[1]);
+            m.put("millis", millis(e.getValue()[0]));
+            topConfigs.add(m);
+        }
+        report.put("configurations", topConfigs);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String text(Map<String, Object> report) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("startup timeline: ready in ").append(report.get("readyMillis")).append(" ms, ")
+                .append(report.get("loadedClasses")).append(" classes, ")
+                .append(report.get("beanCount")).append(" beans (").append(report.get("beanMillis")).append(" ms), ")
+                .append("class data sharing ").append(report.get("classDataSharing")).append('\n');
+        sb.append("  phases:\n");
+        for (Map<String, Object> p : (List<Map<String, Object>>) report.get("phases")) {
+            sb.append(String.format("    %8.1f ms  +%8.1f ms  [%s] %s%n",
+                    p.get("atMillis"), p.get("millis"), p.get("context"), p.get("name")));
+        }
+        sb.append("  configurations:\n");
+        for (Map<String, Object> c : (List<Map<String, Object>>) report.get("configurations")) {
+            sb.append(String.format("    %8.1f ms  %3d beans  %s%s%n", c.get("millis"), c.get("beans"),
+                    c.get("configuration"), Boolean.TRUE.equals(c.get("autoConfiguration")) ? " (auto)" : ""));
+        }
+        sb.append("  beans:\n");
+        for (Map<String, Object> b : (List<Map<String, Object>>) report.get("beans")) {
+            sb.append(String.format("    %8.1f ms  (%8.1f ms incl. dependencies)  [%s] %s%n",
+                    b.get("selfMillis"), b.get("totalMillis"), b.get("context"), b.get("bean")));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 启动参数中指定了共享类归档文件时为 on
+     */
+    private static String classDataSharing() {
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-XX:SharedArchiveFile=")) {
+                return "on";
+            }
+        }
+        return "off";
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 100000.0) / 10.0;
+    }
+}
@@ -0,0 +1,164 @@
+package com.gr.jiang.spring.cloud.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 进程启动过程的时间线: 各阶段耗时, 各bean创建耗时, 以及 Eureka 注册等时间点.
+ * <p>
+ * 配置中心引导(bootstrap)上下文与应用上下文的记录都汇总在同一个实例中, 以 context 区分.
+ * 所有时间以进程启动时刻为起点, 单位毫秒或纳秒.
+ */
+public final class StartupTimeline {
+
+    private static final StartupTimeline INSTANCE = new StartupTimeline();
+
+    /**
+     * JVM 启动时刻, 与 System.nanoTime 对齐后的值
+     */
+    private final long jvmStartNanos;
+
+    private final ConcurrentLinkedQueue<Phase> phases = new ConcurrentLinkedQueue<Phase>();
+
+    private final ConcurrentLinkedQueue<BeanTiming> beans = new ConcurrentLinkedQueue<BeanTiming>();
+
+    private StartupTimeline() {
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        this.jvmStartNanos = System.nanoTime() - uptimeMillis * 1000000L;
+    }
+
+    public static StartupTimeline get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一个阶段
+     *
+     * @param context    bootstrap 或 application
+     * @param name       阶段名
+     * @param startNanos System.nanoTime() 起始值
+     * @param endNanos   System.nanoTime() 结束值
+     */
+    public void phase(String context, String name, long startNanos, long endNanos) {
+        phases.add(new Phase(context, name, startNanos - jvmStartNanos, endNanos - startNanos));
+    }
+
+    /**
+     * 记录一个时间点, 即耗时为0的阶段
+     */
+    public void milestone(String context, String name) {
+        long now = System.nanoTime();
+        phase(context, name, now, now);
+    }
+
+    void bean(BeanTiming timing) {
+        beans.add(timing);
+    }
+
+    public List<Phase> getPhases() {
+        return new ArrayList<Phase>(phases);
+    }
+
+    public List<BeanTiming> getBeans() {
+        return new ArrayList<BeanTiming>(beans);
+    }
+
+    /**
+     * 进程启动至今的纳秒数
+     */
+    public long sinceJvmStart() {
+        return System.nanoTime() - jvmStartNanos;
+    }
+
+    public static final class Phase {
+        final String context;
+
+        final String name;
+
+        final long offsetNanos;
+
+        final long durationNanos;
+
+        Phase(String context, String name, long offsetNanos, long durationNanos) {
+            this.context = context;
+            this.name = name;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getContext() {
+            return context;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+
+    public static final class BeanTiming {
+        final String context;
+
+        final String name;
+
+        final String configuration;
+
+        final boolean autoConfiguration;
+
+        final long selfNanos;
+
+        final long totalNanos;
+
+        BeanTiming(String context, String name, String configuration, boolean autoConfiguration,
+                   long selfNanos, long totalNanos) {
+            this.context = context;
+            this.name = name;
+            this.configuration = configuration;
+            this.autoConfiguration = autoConfiguration;
+            this.selfNanos = selfNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public String getContext() {
+            return context;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 定义该bean的配置类, 组件扫描得到的bean为null
+         */
+        public String getConfiguration() {
+            return configuration;
+        }
+
+        public boolean isAutoConfiguration() {
+            return autoConfiguration;
+        }
+
+        /**
+         * 不含依赖bean创建时间的耗时
+         */
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        /**
+         * 含依赖bean创建时间的耗时
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+    }
+}
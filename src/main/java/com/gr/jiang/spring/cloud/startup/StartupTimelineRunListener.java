@@ -0,0 +1,110 @@
+package com.gr.jiang.spring.cloud.startup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.cloud.bootstrap.BootstrapConfiguration;
+import org.springframework.cloud.client.discovery.event.InstanceRegisteredEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 通过 META-INF/spring.factories 注册, 记录每次 SpringApplication 启动(配置中心引导上下文和应用上下文)的各阶段耗时,
+ * 在上下文准备好后加入 {@link BeanTimingPostProcessor}. 应用上下文启动完成后输出报告.
+ * <p>
+ * startup.timeline.enabled=false 时不记录.
+ */
+public class StartupTimelineRunListener implements SpringApplicationRunListener {
+
+    /**
+     * 配置中心引导上下文的 Environment 中特有的属性源名称
+     */
+    private static final String BOOTSTRAP_PROPERTY_SOURCE = "bootstrap";
+
+    private final SpringApplication application;
+
+    private String context = "application";
+
+    private boolean enabled = true;
+
+    private long mark;
+
+    private ConfigurableEnvironment environment;
+
+    public StartupTimelineRunListener(SpringApplication application, String[] args) {
+        this.application = application;
+    }
+
+    @Override
+    public void started() {
+        mark = System.nanoTime();
+    }
+
+    @Override
+    public void environmentPrepared(ConfigurableEnvironment environment) {
+        this.environment = environment;
+        this.enabled = environment.getProperty("startup.timeline.enabled", Boolean.class, true);
+        if (environment.getPropertySources().contains(BOOTSTRAP_PROPERTY_SOURCE)) {
+            context = "bootstrap";
+        }
+        mark = phase("environment", mark);
+    }
+
+    @Override
+    public void contextPrepared(ConfigurableApplicationContext ctx) {
+        // 应用上下文的初始化器中包含从配置中心拉取配置
+        mark = phase("context initializers", mark);
+        if (enabled) {
+            ctx.getBeanFactory().addBeanPostProcessor(
+                    new BeanTimingPostProcessor(context, ctx.getBeanFactory(), autoConfigurations()));
+        }
+        if (enabled && "application".equals(context)) {
+            // 事件会传播到父上下文, 只在应用上下文中监听
+            ctx.addApplicationListener(new ApplicationListener<InstanceRegisteredEvent<?>>() {
+                @Override
+                public void onApplicationEvent(InstanceRegisteredEvent<?> event) {
+                    StartupTimeline.get().milestone(context, "eureka registration");
+                }
+            });
+        }
+    }
+
+    @Override
+    public void contextLoaded(ConfigurableApplicationContext ctx) {
+        mark = phase("load sources", mark);
+    }
+
+    @Override
+    public void finished(ConfigurableApplicationContext ctx, Throwable exception) {
+        mark = phase("refresh", mark);
+        if (!enabled || exception != null || !"application".equals(context)) {
+            return;
+        }
+        StartupTimeline.get().milestone(context, "ready");
+        new StartupReport(StartupTimeline.get(), environment).write();
+        if (environment.getProperty("startup.exit-after-ready", Boolean.class, false)) {
+            // 训练或测量启动时间的运行, 启动完成即退出
+            System.exit(SpringApplication.exit(ctx));
+        }
+    }
+
+    private long phase(String name, long start) {
+        long now = System.nanoTime();
+        if (enabled) {
+            StartupTimeline.get().phase(context, name, start, now);
+        }
+        return now;
+    }
+
+    private Set<String> autoConfigurations() {
+        ClassLoader cl = application.getClassLoader();
+        Set<String> names = new HashSet<String>(SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, cl));
+        names.addAll(SpringFactoriesLoader.loadFactoryNames(BootstrapConfiguration.class, cl));
+        return names;
+    }
+}
@@ -0,0 +1,98 @@
+package com.gr.jiang.spring.cloud.aop;
+
+import com.gr.jiang.spring.cloud.service.OrgBatchService;
+import com.gr.jiang.spring.cloud.service.OrgService;
+import org.junit.Test;
+import org.springframework.aop.ClassFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveLimiterTest {
+
+    /**
+     * 并发释放时所有样本都被合并, 没有因争用而丢弃的样本
+     */
+    @Test
+    public void concurrentReleasesAreNeverDropped() throws Exception {
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(64, 1, 1000);
+        final int threads = 8;
+        final int perThread = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    int released = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        if (limiter.tryAcquire()) {
+                            limiter.release(ThreadLocalRandom.current().nextLong(1000, 2000));
+                            released++;
+                        }
+                    }
+                    return released;
+                }));
+            }
+            start.countDown();
+            long released = 0;
+            for (Future<Integer> f : futures) {
+                released += f.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(released, limiter.getSamples());
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyRisesAndGrowsWhenItRecovers() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 1, 100);
+        saturate(limiter, 1000000L, 200);
+        int healthy = limiter.getLimit();
+
+        saturate(limiter, 10000000L, 200);
+        int congested = limiter.getLimit();
+        assertTrue(congested + " < " + healthy, congested < healthy);
+
+        saturate(limiter, 1000000L, 200);
+        assertTrue(limiter.getLimit() > congested);
+    }
+
+    /**
+     * 占满上限后以给定耗时逐个释放
+     */
+    private static void saturate(AdaptiveLimiter limiter, long rtt, int rounds) {
+        for (int r = 0; r < rounds; r++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rtt);
+            }
+        }
+    }
+
+    /**
+     * 批量/流式服务不进入隔离舱, 普通服务仍然限流
+     */
+    @Test
+    public void exemptServicesAreNotLimited() {
+        ClassFilter filter = new ServiceBulkheadAdvisor().getPointcut().getClassFilter();
+        assertTrue(filter.matches(OrgService.class));
+        assertFalse(filter.matches(OrgBatchService.class));
+    }
+}
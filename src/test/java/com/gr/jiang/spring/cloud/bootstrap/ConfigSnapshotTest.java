@@ -0,0 +1,123 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ConfigSnapshotTest {
+
+    /**
+     * 三个属性 a.name / b.name / c.name, 排序后依次为第 0/1/2 个
+     */
+    private static final int HEADER = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        Path file = writeValid();
+        ConfigSnapshot snapshot = ConfigSnapshot.read(file);
+        assertEquals(1234L, snapshot.getFetchedAt());
+        assertEquals(3, snapshot.size());
+        assertEquals("中文", snapshot.get("b.name"));
+        assertEquals("3", snapshot.get("c.name"));
+        assertNull(snapshot.get("d.name"));
+    }
+
+    @Test
+    public void negativeCountIsRejected() throws IOException {
+        assertCorrupt(patch(writeValid(), 16, -1));
+        assertCorrupt(patch(writeValid(), 16, Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void countBeyondTheFileIsRejected() throws IOException {
+        assertCorrupt(patch(writeValid(), 16, 1000));
+        assertCorrupt(patch(writeValid(), 16, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void nameOutsideTheDataAreaIsRejected() throws IOException {
+        assertCorrupt(patch(writeValid(), HEADER, -1));
+        assertCorrupt(patch(writeValid(), HEADER + 4, -1));
+        assertCorrupt(patch(writeValid(), HEADER, Integer.MAX_VALUE));
+        assertCorrupt(patch(writeValid(), HEADER + 4, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 值在第一次读取时才解码, 读取文件时就要校验
+     */
+    @Test
+    public void valueOutsideTheDataAreaIsRejected() throws IOException {
+        assertCorrupt(patch(writeValid(), HEADER + 2 * 16 + 8, 100000));
+        assertCorrupt(patch(writeValid(), HEADER + 2 * 16 + 12, -5));
+    }
+
+    @Test
+    public void unsortedNamesAreRejected() throws IOException {
+        Path file = writeValid();
+        // 交换前两个名称的 (偏移, 长度)
+        ByteBuffer first = ByteBuffer.allocate(8);
+        ByteBuffer second = ByteBuffer.allocate(8);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ch.read(first, HEADER);
+            ch.read(second, HEADER + 16);
+            first.flip();
+            second.flip();
+            ch.write(second, HEADER);
+            ch.write(first, HEADER + 16);
+        }
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        Path file = writeValid();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(10);
+        }
+        assertCorrupt(file);
+    }
+
+    private Path writeValid() throws IOException {
+        Map<String, Object> props = new LinkedHashMap<String, Object>();
+        props.put("c.name", 3);
+        props.put("a.name", "1");
+        props.put("b.name", "中文");
+        Path file = folder.newFolder().toPath().resolve("test.cfgs");
+        ConfigSnapshot.of(new MapPropertySource("configService", props), 1234L).write(file);
+        return file;
+    }
+
+    private static Path patch(Path file, int position, int value) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        b.putInt(value).flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(b, position);
+        }
+        return file;
+    }
+
+    private static void assertCorrupt(Path file) {
+        try {
+            ConfigSnapshot.read(file);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.gr.jiang.spring.cloud.bootstrap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServicePropertySourceLocator;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.cloud.context.scope.refresh.RefreshScope;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SnapshotConfigServicePropertySourceLocatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        // 进程内只有第一次启动使用快照
+        ((AtomicBoolean) ReflectionTestUtils.getField(SnapshotConfigServicePropertySourceLocator.class,
+                "bootstrapped")).set(false);
+    }
+
+    /**
+     * 从快照启动后, 后台拉取到的变更发布 EnvironmentChangeEvent 并刷新 @RefreshScope 的bean
+     */
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void backgroundFetchRefreshesTheApplicationContext() throws Exception {
+        Path file = folder.newFolder().toPath().resolve("app.cfgs");
+        ConfigSnapshot.of(source("org.name", "v1"), System.currentTimeMillis()).write(file);
+
+        StandardEnvironment environment = new StandardEnvironment();
+        ConfigServicePropertySourceLocator delegate = mock(ConfigServicePropertySourceLocator.class);
+        PropertySource<?> fetched = source("org.name", "v2");
+        when(delegate.locate(any(Environment.class))).thenReturn((PropertySource) fetched);
+        SnapshotConfigServicePropertySourceLocator locator = new SnapshotConfigServicePropertySourceLocator(
+                new ConfigClientProperties(environment), delegate, file, 60000L);
+
+        ApplicationContext context = mock(ApplicationContext.class);
+        RefreshScope refreshScope = mock(RefreshScope.class);
+        new ConfigSnapshotPublisherRegistrar(context, provider(locator), provider(refreshScope))
+                .afterSingletonsInstantiated();
+
+        PropertySource<?> located = locator.locate(environment);
+        assertTrue(located instanceof SnapshotPropertySource);
+
+        verify(refreshScope, timeout(5000)).refreshAll();
+        ArgumentCaptor<ApplicationEvent> event = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(context).publishEvent(event.capture());
+        assertEquals(Collections.singleton("org.name"), ((EnvironmentChangeEvent) event.getValue()).getKeys());
+        assertEquals("v2", located.getProperty("org.name"));
+        assertEquals("v2", ConfigSnapshot.read(file).get("org.name"));
+    }
+
+    private static MapPropertySource source(String name, String value) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put(name, value);
+        return new MapPropertySource("configService", map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+}
@@ -0,0 +1,88 @@
+package com.gr.jiang.spring.cloud.codec;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DtoBinaryHttpMessageConverterTest {
+
+    private final DtoBinaryHttpMessageConverter converter =
+            new DtoBinaryHttpMessageConverter(new DtoCodecRegistry("com.gr.jiang.spring.cloud.dto"));
+
+    @After
+    public void tearDown() {
+        // 测试线程上创建DTO时压入的Context
+        SystemMessageContext.removeCurrentContext();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        OrgResponseDto dto = new OrgResponseDto();
+        dto.setResult("中文 result");
+        OrgResponseDto read = (OrgResponseDto) converter.read(OrgResponseDto.class,
+                new MockHttpInputMessage(write(dto)));
+        assertEquals(dto.getMsgId(), read.getMsgId());
+        assertEquals("中文 result", read.getResult());
+    }
+
+    /**
+     * 字符串长度为负数或超过剩余数据时按请求数据错误处理, 而不是抛出 StringIndexOutOfBoundsException
+     */
+    @Test
+    public void illegalStringLengthIsNotReadable() throws Exception {
+        assertNotReadable(bodyWithLength(-5L));
+        assertNotReadable(bodyWithLength(0L - Integer.MAX_VALUE));
+        assertNotReadable(bodyWithLength((1L << 32) + 2));
+        assertNotReadable(bodyWithLength(1000));
+    }
+
+    @Test
+    public void oversizedWriteBufferIsNotRetained() throws Exception {
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= DtoBinaryHttpMessageConverter.MAX_RETAINED_CAPACITY) {
+            big.append("0123456789");
+        }
+        OrgResponseDto dto = new OrgResponseDto();
+        dto.setResult(big.toString());
+        OrgResponseDto read = (OrgResponseDto) converter.read(OrgResponseDto.class,
+                new MockHttpInputMessage(write(dto)));
+        assertEquals(big.toString(), read.getResult());
+        assertTrue(DtoBinaryHttpMessageConverter.WRITER.get().buffer().length
+                <= DtoBinaryHttpMessageConverter.MAX_RETAINED_CAPACITY);
+    }
+
+    private byte[] write(OrgResponseDto dto) throws Exception {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(dto, DtoBinaryHttpMessageConverter.DTO_BINARY, output);
+        return output.getBodyAsBytes();
+    }
+
+    /**
+     * 合法的 schema 之后紧跟第一个字符串属性(msgId), 其长度字段为指定值
+     */
+    private byte[] bodyWithLength(long encodedLength) throws Exception {
+        byte[] valid = write(new OrgResponseDto());
+        BinaryWriter out = new BinaryWriter(32);
+        out.writeInt(new BinaryReader(valid, 0, valid.length).readInt());
+        out.writeVarLong(encodedLength);
+        out.writeByte('x');
+        return out.toByteArray();
+    }
+
+    private void assertNotReadable(byte[] body) throws Exception {
+        try {
+            converter.read(OrgResponseDto.class, new MockHttpInputMessage(body));
+            fail("expected HttpMessageNotReadableException");
+        } catch (HttpMessageNotReadableException e) {
+            // expected
+        }
+    }
+}
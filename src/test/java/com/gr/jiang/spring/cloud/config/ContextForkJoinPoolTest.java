@@ -0,0 +1,81 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContextForkJoinPoolTest {
+
+    private ContextForkJoinPool pool;
+
+    private SystemMessageContext context;
+
+    @Before
+    public void setUp() {
+        pool = new ContextForkJoinPool(2);
+        context = SystemMessageContext.createAndPushContext();
+    }
+
+    @After
+    public void tearDown() {
+        SystemMessageContext.removeCurrentContext();
+        context.clear();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void forkJoinTasksRunInTheCallersContext() throws Exception {
+        assertEquals(context.getRequestId(), pool.invoke(new RequestIdTask()));
+        assertEquals(context.getRequestId(), pool.submit(new RequestIdTask()).get());
+
+        RequestIdTask executed = new RequestIdTask();
+        pool.execute(executed);
+        assertEquals(context.getRequestId(), executed.join());
+    }
+
+    @Test
+    public void invokeAllRunsInTheCallersContext() throws Exception {
+        Callable<String> task = () -> SystemMessageContext.getCurrentContext().getRequestId();
+        List<Future<String>> futures = pool.invokeAll(Arrays.asList(task, task, task));
+        for (Future<String> future : futures) {
+            assertEquals(context.getRequestId(), future.get());
+        }
+    }
+
+    @Test
+    public void implicitLambdasSelectTheirWrapper() throws Exception {
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        List<String> ids = pool.submit(() -> Arrays.asList("a", "b", "c").parallelStream()
+                .map(snapshot.wrapFunction(s -> SystemMessageContext.getCurrentContext().getRequestId()))
+                .collect(Collectors.toList())).get();
+        for (String id : ids) {
+            assertEquals(context.getRequestId(), id);
+        }
+        assertEquals(context.getRequestId(), pool.submit(snapshot.wrapSupplier(
+                () -> SystemMessageContext.getCurrentContext().getRequestId())::get).get());
+    }
+
+    @Test
+    public void tasksWithoutCallerContextAreNotWrapped() throws Exception {
+        SystemMessageContext.removeCurrentContext();
+        RequestIdTask task = new RequestIdTask();
+        assertNull(pool.invoke(task));
+    }
+
+    static class RequestIdTask extends RecursiveTask<String> {
+        protected String compute() {
+            SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+            return ctx == null ? null : ctx.getRequestId();
+        }
+    }
+}
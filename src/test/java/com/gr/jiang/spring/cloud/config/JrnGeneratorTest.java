@@ -0,0 +1,125 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JrnGeneratorTest {
+
+    private static final int THREADS = 8;
+
+    @After
+    public void restoreWidth() {
+        JrnGenerator.setSeqWidth(JrnGenerator.COMPAT_SEQ_WIDTH);
+    }
+
+    @Test
+    public void concurrentIdsAreUnique() throws Exception {
+        final int perThread = 20000;
+        final Set<String> jrnNos = ConcurrentHashMap.newKeySet();
+        final Set<String> msgIds = ConcurrentHashMap.newKeySet();
+        runConcurrently(() -> {
+            for (int i = 0; i < perThread; i++) {
+                jrnNos.add(JrnGenerator.genJrnNo());
+                msgIds.add(JrnGenerator.genMsgId());
+            }
+        });
+        assertEquals(THREADS * perThread, jrnNos.size());
+        assertEquals(THREADS * perThread, msgIds.size());
+    }
+
+    @Test
+    public void reservedRangesDoNotOverlapSingleIds() throws Exception {
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        final int rounds = 500;
+        runConcurrently(() -> {
+            for (int i = 0; i < rounds; i++) {
+                for (String id : JrnGenerator.reserveMsgId(17)) {
+                    assertTrue("duplicate " + id, ids.add(id));
+                }
+                String id = JrnGenerator.genMsgId();
+                assertTrue("duplicate " + id, ids.add(id));
+            }
+        });
+        assertEquals(THREADS * rounds * 18, ids.size());
+    }
+
+    @Test
+    public void switchingWidthBackAndForthNeverReissues() {
+        Set<String> jrnNos = new HashSet<String>();
+        Set<String> msgIds = new HashSet<String>();
+        for (int round = 0; round < 20; round++) {
+            JrnGenerator.setSeqWidth(round % 2 == 0 ? 4 : 5);
+            for (int i = 0; i < 100; i++) {
+                String jrn = JrnGenerator.genJrnNo();
+                String msg = JrnGenerator.genMsgId();
+                assertTrue("duplicate " + jrn, jrnNos.add(jrn));
+                assertTrue("duplicate " + msg, msgIds.add(msg));
+            }
+        }
+    }
+
+    @Test
+    public void switchingWidthWhileGeneratingNeverReissues() throws Exception {
+        final Set<String> jrnNos = ConcurrentHashMap.newKeySet();
+        final Set<String> msgIds = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean duplicate = new AtomicBoolean();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread switcher = new Thread(() -> {
+            int w = 4;
+            while (running.get()) {
+                w = w == 4 ? 5 : 4;
+                JrnGenerator.setSeqWidth(w);
+            }
+        });
+        switcher.start();
+        try {
+            runConcurrently(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    if (!jrnNos.add(JrnGenerator.genJrnNo()) | !msgIds.add(JrnGenerator.genMsgId())) {
+                        duplicate.set(true);
+                    }
+                }
+            });
+        } finally {
+            running.set(false);
+            switcher.join();
+        }
+        assertTrue("duplicate id issued across width switches", !duplicate.get());
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LockableHashtableTest {
+
+    @Test
+    public void rejectedAndNoOpMutationsKeepTheView() {
+        LockableHashtable table = new LockableHashtable();
+        Object value = "v";
+        table.put("LOCKED", value, true);
+        table.put("OPEN", value);
+        LockableHashtable.ResolvedView view = table.resolve();
+
+        table.put("LOCKED", "other");
+        table.remove("LOCKED");
+        table.remove("ABSENT");
+        table.remove("OPEN", "other");
+        table.replace("ABSENT", "other");
+        table.replace("OPEN", "other", "next");
+        table.putIfAbsent("OPEN", "other");
+        table.put("OPEN", value);
+        table.putAll(new java.util.HashMap());
+
+        assertTrue(view.isCurrent());
+        assertSame(view, table.resolve());
+        assertEquals("v", table.get("LOCKED"));
+    }
+
+    @Test
+    public void changesAnywhereInTheChainInvalidateTheView() {
+        LockableHashtable root = new LockableHashtable();
+        LockableHashtable middle = new LockableHashtable();
+        LockableHashtable leaf = new LockableHashtable();
+        middle.setParent(root);
+        leaf.setParent(middle);
+        root.put("A", "root");
+        LockableHashtable.ResolvedView view = leaf.resolve();
+        assertEquals("root", view.get("A"));
+
+        root.put("A", "changed");
+        assertFalse(view.isCurrent());
+        assertEquals("changed", leaf.getResolved("A"));
+
+        view = leaf.resolve();
+        middle.put("B", "middle");
+        assertFalse(view.isCurrent());
+        assertEquals("middle", leaf.getResolved("B"));
+
+        view = leaf.resolve();
+        leaf.put("A", "leaf");
+        assertNotSame(view, leaf.resolve());
+        assertEquals("leaf", leaf.getResolved("A"));
+        assertEquals("changed", middle.getResolved("A"));
+    }
+
+    /**
+     * 其他链上的表(即使也是parent)被修改, 不影响本链的视图
+     */
+    @Test
+    public void changesInOtherChainsKeepTheView() {
+        LockableHashtable root = new LockableHashtable();
+        LockableHashtable leaf = new LockableHashtable();
+        leaf.setParent(root);
+        LockableHashtable otherRoot = new LockableHashtable();
+        new LockableHashtable().setParent(otherRoot);
+        root.put("A", "root");
+        LockableHashtable.ResolvedView view = leaf.resolve();
+
+        otherRoot.put("A", "other");
+        assertTrue(view.isCurrent());
+        assertSame(view, leaf.resolve());
+    }
+
+    /**
+     * 更换为版本较小的parent链后, 旧视图同样失效
+     */
+    @Test
+    public void replacingTheParentInvalidatesTheView() {
+        LockableHashtable busy = new LockableHashtable();
+        for (int i = 0; i < 100; i++) {
+            busy.put("A", "busy" + i);
+        }
+        LockableHashtable quiet = new LockableHashtable();
+        quiet.put("A", "quiet");
+        LockableHashtable leaf = new LockableHashtable();
+        leaf.setParent(busy);
+        LockableHashtable.ResolvedView view = leaf.resolve();
+
+        leaf.setParent(quiet);
+        assertFalse(view.isCurrent());
+        assertEquals("quiet", leaf.getResolved("A"));
+    }
+
+    /**
+     * 视图过期后先逐级查找, 链版本连续稳定一段时间才重新展开, 频繁修改时不会每次读取都复制整条链
+     */
+    @Test
+    public void staleViewIsRebuiltLazily() {
+        LockableHashtable root = new LockableHashtable();
+        LockableHashtable leaf = new LockableHashtable();
+        leaf.setParent(root);
+        root.put("A", "root");
+        LockableHashtable.ResolvedView view = leaf.resolve();
+
+        for (int i = 0; i < 10 * LockableHashtable.REBUILD_AFTER_READS; i++) {
+            leaf.put("N", i);
+            assertEquals(i, leaf.getResolved("N"));
+            assertEquals("root", leaf.getResolved("A"));
+        }
+        assertFalse("频繁修改期间不重新展开", view.isCurrent());
+        assertSame(view, ReflectionTestUtils.getField(leaf, "resolved"));
+
+        for (int i = 0; i < LockableHashtable.REBUILD_AFTER_READS; i++) {
+            assertEquals("root", leaf.getResolved("A"));
+        }
+        LockableHashtable.ResolvedView rebuilt =
+                (LockableHashtable.ResolvedView) ReflectionTestUtils.getField(leaf, "resolved");
+        assertNotSame(view, rebuilt);
+        assertTrue(rebuilt.isCurrent());
+        assertEquals(10 * LockableHashtable.REBUILD_AFTER_READS - 1, leaf.getResolved("N"));
+    }
+
+    @Test
+    public void contextPropertiesAreReadThroughTheView() {
+        SystemMessageContext parent = SystemMessageContext.createContext("p", null);
+        SystemMessageContext child = SystemMessageContext.createContext("c", parent);
+        try {
+            parent.setProperty("org.id", "1");
+            assertEquals("1", child.getProperty("org.id"));
+            child.setProperty("org.id", "2");
+            assertEquals("2", child.getProperty("ORG.ID"));
+            child.delProperty("org.id");
+            assertEquals("1", child.getProperty("org.id"));
+            parent.delProperty("org.id");
+            assertNull(child.getProperty("org.id"));
+        } finally {
+            child.clear();
+            parent.clear();
+        }
+    }
+
+    @Test
+    public void bulkAndFunctionalUpdatesRespectLocks() {
+        LockableHashtable table = new LockableHashtable();
+        table.put("K", "locked", true);
+        table.put("OPEN", "open");
+
+        table.putAll(Collections.singletonMap("K", "putAll"));
+        table.compute("K", (k, v) -> "compute");
+        table.compute("K", (k, v) -> null);
+        table.computeIfPresent("K", (k, v) -> "computeIfPresent");
+        table.computeIfAbsent("K", k -> "computeIfAbsent");
+        table.merge("K", "merge", (a, b) -> b);
+        table.replaceAll((k, v) -> "replaceAll");
+        try {
+            table.entrySet().removeIf(e -> true);
+            throw new AssertionError("entrySet() must be read-only");
+        } catch (UnsupportedOperationException expected) {
+            // 只读视图
+        }
+        table.keySet().removeIf(k -> true);
+        for (Iterator it = table.keySet().iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+        for (Iterator it = table.values().iterator(); it.hasNext(); ) {
+            it.next();
+            try {
+                it.remove();
+            } catch (UnsupportedOperationException expected) {
+                // 只读视图
+            }
+        }
+
+        assertEquals("locked", table.get("K"));
+        assertEquals("replaceAll", table.get("OPEN"));
+        try {
+            table.keySet("v");
+            throw new AssertionError("keySet(V) must not expose a mutable view");
+        } catch (UnsupportedOperationException expected) {
+            // 预期
+        }
+    }
+
+    /**
+     * 多线程混合各种修改操作, 一旦某个key被锁定, 其值不再变化
+     */
+    @Test
+    public void lockedEntriesSurviveConcurrentMutation() throws Exception {
+        final LockableHashtable table = new LockableHashtable();
+        final int keys = 64;
+        final int threads = 8;
+        final int opsPerThread = 200000;
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            Future<?> observer = pool.submit(() -> {
+                boolean[] stable = new boolean[keys];
+                start.await();
+                while (running.get()) {
+                    for (int i = 0; i < keys; i++) {
+                        String key = "K" + i;
+                        Object value = table.get(key);
+                        if (stable[i]) {
+                            assertEquals(key + " changed after it was locked", "L:" + key, value);
+                        } else if (table.isKeyLocked(key) && ("L:" + key).equals(value)) {
+                            stable[i] = true;
+                        }
+                    }
+                }
+                return null;
+            });
+            Future<?>[] writers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                writers[t] = pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    start.await();
+                    for (int n = 0; n < opsPerThread; n++) {
+                        String key = "K" + random.nextInt(keys);
+                        String value = "U:" + n;
+                        switch (random.nextInt(10)) {
+                            case 0:
+                                if (random.nextInt(50) == 0) {
+                                    table.put(key, "L:" + key, true);
+                                }
+                                break;
+                            case 1:
+                                table.put(key, value);
+                                break;
+                            case 2:
+                                table.remove(key);
+                                break;
+                            case 3:
+                                table.compute(key, (k, v) -> v == null ? value : null);
+                                break;
+                            case 4:
+                                table.merge(key, value, (a, b) -> b);
+                                break;
+                            case 5:
+                                table.putAll(Collections.singletonMap(key, value));
+                                break;
+                            case 6:
+                                table.replace(key, value);
+                                break;
+                            case 7:
+                                table.computeIfPresent(key, (k, v) -> value);
+                                break;
+                            case 8:
+                                table.replaceAll((k, v) -> key.equals(k) ? value : v);
+                                break;
+                            default:
+                                Object current = table.get(key);
+                                if (current != null) {
+                                    table.remove(key, current);
+                                }
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(2, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            observer.get(1, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int locked = 0;
+        for (int i = 0; i < keys; i++) {
+            String key = "K" + i;
+            if (table.isKeyLocked(key)) {
+                locked++;
+                assertEquals("L:" + key, table.get(key));
+            }
+        }
+        assertTrue("expected some keys to be locked", locked > 0);
+    }
+}
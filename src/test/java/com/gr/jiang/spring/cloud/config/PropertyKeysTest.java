@@ -0,0 +1,33 @@
+package com.gr.jiang.spring.cloud.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyKeysTest {
+
+    @Test
+    public void cachedPairsAreReused() {
+        String key = PropertyKeys.DOTTED.canonical("org", "name");
+        assertEquals("ORG.NAME", key);
+        assertSame(key, PropertyKeys.DOTTED.canonical("org", "name"));
+    }
+
+    /**
+     * 由请求数据拼出的动态key不能让两级表无限增长: 上限按整张表的组合数计算
+     */
+    @Test
+    public void pairCacheHasOneGlobalBound() {
+        PropertyKeys keys = PropertyKeys.JOINED;
+        int n = 2 * PropertyKeys.MAX_ENTRIES;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(("k" + i + "v" + j).toUpperCase(), keys.canonical("k" + i, "v" + j));
+            }
+        }
+        assertTrue("pairs cached: " + keys.pairCount(), keys.pairCount() <= PropertyKeys.MAX_ENTRIES);
+        assertEquals("K1V1", keys.canonical("k1", "v1"));
+    }
+}
@@ -0,0 +1,168 @@
+package com.gr.jiang.spring.cloud.config;
+
+import com.gr.jiang.spring.cloud.filter.SystemMessageContextFilter;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SystemMessageContextTest {
+
+    @After
+    public void cleanUp() {
+        SystemMessageContext.removeCurrentContext();
+    }
+
+    @Test
+    public void readingWithoutContextDoesNotBindAStack() throws InterruptedException {
+        final Object[] seen = new Object[3];
+        Thread t = new Thread(() -> {
+            seen[0] = SystemMessageContext.getCurrentContext();
+            seen[1] = SystemMessageContext.popCurrentContext();
+            seen[2] = SystemMessageContext.currentContext.get();
+        });
+        t.start();
+        t.join();
+        assertNull(seen[0]);
+        assertNull(seen[1]);
+        assertNull(seen[2]);
+    }
+
+    @Test
+    public void stackIsReusedWhenPoppedEmpty() {
+        SystemMessageContext outer = SystemMessageContext.createAndPushContext();
+        ContextStack stack = SystemMessageContext.currentContext.get();
+        SystemMessageContext inner = SystemMessageContext.createAndPushContext();
+        assertSame(inner, SystemMessageContext.popCurrentContext());
+        assertSame(outer, SystemMessageContext.getCurrentContext());
+        assertSame(outer, SystemMessageContext.popCurrentContext());
+        assertSame(stack, SystemMessageContext.currentContext.get());
+        assertEquals(0, stack.size());
+        assertNull(SystemMessageContext.getCurrentContext());
+
+        SystemMessageContext.pushCurrentContext(outer);
+        assertSame(stack, SystemMessageContext.currentContext.get());
+        SystemMessageContext.popCurrentContext();
+        inner.clear();
+        outer.clear();
+    }
+
+    @Test
+    public void removeCurrentContextClearsTheStackInPlace() {
+        SystemMessageContext ctx = SystemMessageContext.createAndPushContext();
+        ContextStack stack = SystemMessageContext.currentContext.get();
+        SystemMessageContext.removeCurrentContext();
+        assertSame(stack, SystemMessageContext.currentContext.get());
+        assertEquals(0, stack.size());
+        assertNull(SystemMessageContext.getCurrentContext());
+        ctx.clear();
+    }
+
+    /**
+     * 压栈过深而扩容的数组在栈清空后不保留
+     */
+    @Test
+    public void deepStackCapacityIsNotRetained() {
+        SystemMessageContext ctx = SystemMessageContext.createContext(null);
+        ContextStack stack = new ContextStack();
+        int initial = stack.capacity();
+        for (int i = 0; i < 1000; i++) {
+            stack.push(ctx);
+        }
+        stack.clear();
+        assertEquals(initial, stack.capacity());
+
+        for (int i = 0; i < 1000; i++) {
+            stack.push(ctx);
+        }
+        while (stack.pop() != null) {
+            // 弹空
+        }
+        assertEquals(initial, stack.capacity());
+
+        for (int i = 0; i < ContextStack.MAX_RETAINED_CAPACITY; i++) {
+            stack.push(ctx);
+        }
+        int grown = stack.capacity();
+        stack.clear();
+        assertEquals("不超过上限的容量保留", grown, stack.capacity());
+        ctx.clear();
+    }
+
+    /**
+     * 同一线程上反复经过过滤器: 请求的Context每次都从根Context摘除, 线程上的栈复用同一个对象且容量不增长
+     */
+    @Test
+    public void filterCyclesReleaseRequestContexts() throws Exception {
+        SystemMessageContextFilter filter = new SystemMessageContextFilter();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/org/detail");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+            SystemMessageContext.pushCurrentContext(SystemMessageContext.createContext(ctx));
+            // 偶尔压栈很深且不弹出
+            if (ctx.getRequestId().hashCode() % 97 == 0) {
+                SystemMessageContext nested = SystemMessageContext.createContext(ctx);
+                for (int i = 0; i < 200; i++) {
+                    SystemMessageContext.pushCurrentContext(nested);
+                }
+            }
+        };
+
+        SystemMessageContext root = SystemMessageContext.getRootContext();
+        int children = childCount(root);
+        filter.doFilter(request, response, chain);
+        ContextStack stack = SystemMessageContext.currentContext.get();
+        for (int i = 0; i < 100000; i++) {
+            filter.doFilter(request, response, chain);
+            assertSame(stack, SystemMessageContext.currentContext.get());
+            assertEquals(0, stack.size());
+            assertTrue(stack.capacity() <= ContextStack.MAX_RETAINED_CAPACITY);
+            assertEquals(children, childCount(root));
+        }
+        assertNull(SystemMessageContext.getCurrentContext());
+    }
+
+    private static int childCount(SystemMessageContext parent) {
+        int n = 0;
+        for (SystemMessageContext c = parent.getFirstChild(); c != null; c = c.getNextBrother()) {
+            n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void childrenCanBeRemovedInAnyOrder() {
+        SystemMessageContext parent = SystemMessageContext.createContext("parent", null);
+        List<SystemMessageContext> children = new ArrayList<SystemMessageContext>();
+        for (int i = 0; i < 5; i++) {
+            children.add(SystemMessageContext.createContext("c" + i, parent));
+        }
+        children.get(2).clear();
+        children.get(0).clear();
+        children.get(4).clear();
+        // 重复删除不影响链表
+        children.get(2).clear();
+        assertSame(children.get(1), parent.getFirstChild());
+        assertSame(children.get(3), parent.getFirstChild().getNextBrother());
+        assertNull(children.get(3).getNextBrother());
+
+        SystemMessageContext added = SystemMessageContext.createContext("c5", parent);
+        assertSame(added, children.get(3).getNextBrother());
+        children.get(1).clear();
+        children.get(3).clear();
+        added.clear();
+        assertNull(parent.getFirstChild());
+        parent.clear();
+    }
+}
@@ -0,0 +1,221 @@
+package com.gr.jiang.spring.cloud.controller;
+
+import com.gr.jiang.spring.cloud.aop.ServiceOverloadException;
+import com.gr.jiang.spring.cloud.config.InstrumentedTaskDecorator;
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.dto.IResponseDto;
+import com.gr.jiang.spring.cloud.dto.impl.OrgRequestDto;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import com.gr.jiang.spring.cloud.metrics.RequestMetrics;
+import com.gr.jiang.spring.cloud.service.OrgService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class OrgControllerAsyncTest {
+
+    /**
+     * 模拟Tomcat的请求线程数
+     */
+    private static final int CONTAINER_THREADS = 4;
+
+    private static final int REQUESTS = 32;
+
+    private static final long SERVICE_MILLIS = 100;
+
+    private final InstrumentedTaskDecorator decorator = new InstrumentedTaskDecorator();
+
+    private ThreadPoolTaskExecutor orgExecutor;
+
+    private OrgService orgService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        orgService = mock(OrgService.class);
+        orgExecutor = executor(REQUESTS, 0);
+        orgController controller = new orgController();
+        controller.orgService = orgService;
+        controller.orgExecutor = orgExecutor;
+        controller.asyncTimeout = 5000;
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        orgExecutor.shutdown();
+        // 测试线程上创建DTO时压入的Context
+        SystemMessageContext.removeCurrentContext();
+    }
+
+    /**
+     * 服务调用较慢时, 异步接口不占用请求线程, 同样的请求线程数下吞吐量明显高于同步接口
+     */
+    @Test
+    public void asyncEndpointOutperformsSyncWithFewContainerThreads() throws Exception {
+        when(orgService.handle(any(OrgRequestDto.class))).thenAnswer(invocation -> {
+            Thread.sleep(SERVICE_MILLIS);
+            return response("Id result");
+        });
+
+        // 预热, 创建线程池线程
+        timeRequests("/org/detail", false);
+        timeRequests("/org/detail/async", true);
+
+        long sync = timeRequests("/org/detail", false);
+        long async = timeRequests("/org/detail/async", true);
+
+        // 同步约 REQUESTS / CONTAINER_THREADS 轮, 异步约一轮
+        assertTrue("sync " + sync + "ms, async " + async + "ms", async * 3 < sync);
+        assertEquals(REQUESTS * 2, decorator.getCompleted());
+    }
+
+    @Test
+    public void rejectedRequestsGet503AndAreNotCountedAsSubmitted() throws Exception {
+        orgExecutor.shutdown();
+        orgExecutor = executor(1, 0);
+        orgController controller = new orgController();
+        controller.orgService = orgService;
+        controller.orgExecutor = orgExecutor;
+        controller.asyncTimeout = 5000;
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        when(orgService.handle(any(OrgRequestDto.class))).thenAnswer(invocation -> {
+            release.await();
+            return response("Id result");
+        });
+
+        MvcResult first = mockMvc.perform(get("/org/detail/async")).andReturn();
+        MvcResult busy = mockMvc.perform(get("/org/detail/async")).andReturn();
+        mockMvc.perform(asyncDispatch(busy))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("## org ## busy"));
+
+        release.countDown();
+        first.getAsyncResult(5000);
+        mockMvc.perform(asyncDispatch(first)).andExpect(status().isOk());
+
+        assertEquals(1, decorator.getSubmitted());
+        assertEquals(1, decorator.getRejected());
+
+        RequestMetrics metrics = new RequestMetrics();
+        ReflectionTestUtils.setField(metrics, "orgTaskDecorator", decorator);
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        assertTrue(out.toString(), out.indexOf("org_async_tasks_total{state=\"rejected\"} 1\n") >= 0);
+        assertTrue(out.toString(), out.indexOf("org_async_tasks_total{state=\"submitted\"} 1\n") >= 0);
+    }
+
+    /**
+     * 被限流拒绝的调用返回503, 而不是200和空结果
+     */
+    @Test
+    public void shedCallsGet503() throws Exception {
+        OrgResponseDto shed = new OrgResponseDto();
+        shed.setRetCode(IResponseDto.RET_CODE_OVERLOAD);
+        when(orgService.handle(any(OrgRequestDto.class))).thenReturn(shed);
+
+        mockMvc.perform(get("/org/detail"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("## org ## overloaded"));
+        MvcResult async = mockMvc.perform(get("/org/detail/async")).andReturn();
+        async.getAsyncResult(5000);
+        mockMvc.perform(asyncDispatch(async))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("## org ## overloaded"));
+    }
+
+    /**
+     * 返回值不是 IResponseDto 的服务被拒绝时抛出的 ServiceOverloadException 同样返回503
+     */
+    @Test
+    public void overloadExceptionGets503() throws Exception {
+        orgController controller = new orgController();
+        controller.orgService = orgService;
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new overloadExceptionHandler()).build();
+        when(orgService.handle(any(OrgRequestDto.class))).thenThrow(new ServiceOverloadException("OrgService"));
+
+        mockMvc.perform(get("/org/detail"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    /**
+     * 用 CONTAINER_THREADS 个线程发出 REQUESTS 个请求, 返回全部结果就绪所用的毫秒数. 响应内容在计时之后检查
+     */
+    private long timeRequests(final String uri, final boolean async) throws Exception {
+        ExecutorService container = Executors.newFixedThreadPool(CONTAINER_THREADS);
+        List<MvcResult> done = new ArrayList<MvcResult>();
+        long elapsed;
+        try {
+            long start = System.nanoTime();
+            List<Future<MvcResult>> results = new ArrayList<Future<MvcResult>>();
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(container.submit(() -> mockMvc.perform(get(uri)).andReturn()));
+            }
+            for (Future<MvcResult> f : results) {
+                MvcResult result = f.get(30, TimeUnit.SECONDS);
+                if (async) {
+                    result.getAsyncResult(5000);
+                }
+                done.add(result);
+            }
+            elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            container.shutdownNow();
+        }
+        for (MvcResult result : done) {
+            if (async) {
+                mockMvc.perform(asyncDispatch(result))
+                        .andExpect(status().isOk())
+                        .andExpect(content().string("## org ##Id result"));
+            } else {
+                assertEquals("## org ##Id result", result.getResponse().getContentAsString());
+            }
+        }
+        return elapsed;
+    }
+
+    private ThreadPoolTaskExecutor executor(int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setTaskDecorator(decorator);
+        executor.setRejectedExecutionHandler(decorator);
+        executor.initialize();
+        return executor;
+    }
+
+    private static OrgResponseDto response(String result) {
+        OrgResponseDto dto = new OrgResponseDto();
+        dto.setResult(result);
+        return dto;
+    }
+}
@@ -0,0 +1,71 @@
+package com.gr.jiang.spring.cloud.discovery;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppSnapshotTest {
+
+    private final PeerInstance good = new PeerInstance(
+            PeerRegistryTest.instance("ORG-SERVICE", "good", InstanceInfo.InstanceStatus.UP));
+
+    private final PeerInstance failing = new PeerInstance(
+            PeerRegistryTest.instance("ORG-SERVICE", "failing", InstanceInfo.InstanceStatus.UP));
+
+    private final AppSnapshot snapshot =
+            new AppSnapshot("ORG-SERVICE", new PeerInstance[]{good, failing}, new InstanceInfo[0]);
+
+    /**
+     * 快速失败的实例耗时最短, 但失败不计入耗时而是退避, 因此只分到退避结束时的少量试探调用
+     */
+    @Test
+    public void failingPeerLosesTraffic() throws Exception {
+        int failingCalls = 0;
+        for (int i = 0; i < 2000; i++) {
+            PeerInstance chosen = snapshot.choose();
+            long start = chosen.start();
+            if (chosen == failing) {
+                failingCalls++;
+                chosen.complete(start, false);
+            } else {
+                TimeUnit.MICROSECONDS.sleep(50);
+                chosen.complete(start, true);
+            }
+        }
+        // 退避结束时的试探调用, 远少于平分时的1000次
+        assertTrue("failing peer got " + failingCalls + " calls", failingCalls < 20);
+        assertEquals(0, good.getFailures());
+        assertTrue(failing.getFailures() > 0);
+    }
+
+    /**
+     * 退避结束后实例重新参与选择, 一次成功即清除失败计数
+     */
+    @Test
+    public void peerRecoversAfterBackoff() throws Exception {
+        failing.complete(failing.start(), false);
+        assertEquals(Long.MAX_VALUE, failing.cost());
+
+        TimeUnit.NANOSECONDS.sleep(PeerInstance.INITIAL_BACKOFF_NANOS + TimeUnit.MILLISECONDS.toNanos(50));
+        assertNotEquals(Long.MAX_VALUE, failing.cost());
+        failing.complete(failing.start(), true);
+        assertEquals(0, failing.getFailures());
+    }
+
+    @Test
+    public void consecutiveFailuresBackOffLonger() {
+        for (int i = 0; i < 20; i++) {
+            failing.complete(failing.start(), false);
+        }
+        long until = (Long) ReflectionTestUtils.getField(failing, "backoffUntilNanos");
+        long remaining = until - System.nanoTime();
+        assertTrue(remaining > PeerInstance.INITIAL_BACKOFF_NANOS);
+        assertTrue(remaining <= PeerInstance.MAX_BACKOFF_NANOS);
+    }
+}
@@ -0,0 +1,278 @@
+package com.gr.jiang.spring.cloud.discovery;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.appinfo.MyDataCenterInfo;
+import com.netflix.appinfo.MyDataCenterInstanceConfig;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用测试中启动的 Eureka 替身服务验证注册表的增量刷新, 以及 EurekaClient 重建后监听不丢失
+ */
+public class PeerRegistryTest {
+
+    private StandInEurekaServer server;
+
+    private final List<DiscoveryClient> clients = new ArrayList<DiscoveryClient>();
+
+    private PeerRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInEurekaServer();
+        server.put(instance("ORG-SERVICE", "org-1", InstanceInfo.InstanceStatus.UP));
+        server.put(instance("ORG-SERVICE", "org-2", InstanceInfo.InstanceStatus.UP));
+        server.put(instance("USER-SERVICE", "user-1", InstanceInfo.InstanceStatus.UP));
+    }
+
+    @After
+    public void tearDown() {
+        if (registry != null) {
+            registry.close();
+        }
+        for (DiscoveryClient client : clients) {
+            client.shutdown();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void onlyChangedApplicationsAreRebuilt() throws Exception {
+        registry = new PeerRegistry(newClient());
+        AppSnapshot org = registry.getSnapshot("org-service");
+        AppSnapshot user = registry.getSnapshot("USER-SERVICE");
+        assertEquals(2, org.size());
+        assertEquals(1, user.size());
+        PeerInstance org1 = find(org, "org-1");
+        org1.complete(org1.start(), true);
+
+        server.put(instance("ORG-SERVICE", "org-3", InstanceInfo.InstanceStatus.UP));
+        awaitTrue(() -> registry.getSnapshot("ORG-SERVICE").size() == 3);
+        assertSame("未变化的应用沿用原快照", user, registry.getSnapshot("USER-SERVICE"));
+        assertSame("未变化的实例保留调用统计", org1, find(registry.getSnapshot("ORG-SERVICE"), "org-1"));
+
+        server.put(instance("ORG-SERVICE", "org-2", InstanceInfo.InstanceStatus.DOWN));
+        awaitTrue(() -> registry.getSnapshot("ORG-SERVICE").size() == 2);
+        assertNull(find(registry.getSnapshot("ORG-SERVICE"), "org-2"));
+        assertSame(user, registry.getSnapshot("USER-SERVICE"));
+
+        Map<String, AppSnapshot> before = registry.getSnapshots();
+        server.awaitFetches(2);
+        assertSame("注册信息没有变化时快照表不变", before, registry.getSnapshots());
+
+        server.remove("USER-SERVICE", "user-1");
+        awaitTrue(() -> registry.getSnapshot("USER-SERVICE") == null
+                || registry.getSnapshot("USER-SERVICE").size() == 0);
+        assertSame(org1, find(registry.getSnapshot("ORG-SERVICE"), "org-1"));
+        assertTrue("客户端应通过增量拉取更新", server.getDeltaFetches() > 0);
+    }
+
+    /**
+     * 模拟 refresh scope: 代理背后的 EurekaClient 被关闭并换成新对象, 刷新事件后注册表继续收到新对象的更新
+     */
+    @Test
+    public void listenerSurvivesEurekaClientRecreation() throws Exception {
+        final AtomicReference<EurekaClient> target = new AtomicReference<EurekaClient>(newClient());
+        EurekaClient proxy = (EurekaClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{EurekaClient.class}, new InvocationHandler() {
+                    public Object invoke(Object p, java.lang.reflect.Method m, Object[] args) throws Throwable {
+                        try {
+                            return m.invoke(target.get(), args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        registry = new PeerRegistry(proxy);
+        assertEquals(2, registry.getSnapshot("ORG-SERVICE").size());
+
+        EurekaClient old = target.getAndSet(newClient());
+        old.shutdown();
+        registry.onApplicationEvent(new RefreshScopeRefreshedEvent());
+
+        server.put(instance("ORG-SERVICE", "org-3", InstanceInfo.InstanceStatus.UP));
+        awaitTrue(() -> registry.getSnapshot("ORG-SERVICE").size() == 3);
+    }
+
+    private DiscoveryClient newClient() {
+        EurekaClientConfigBean config = new EurekaClientConfigBean();
+        config.setRegisterWithEureka(false);
+        config.setRegistryFetchIntervalSeconds(1);
+        config.getServiceUrl().put(EurekaClientConfigBean.DEFAULT_ZONE, server.url());
+        MyDataCenterInstanceConfig instanceConfig = new MyDataCenterInstanceConfig();
+        InstanceInfo self = instance("PEER-REGISTRY-TEST", "self", InstanceInfo.InstanceStatus.UP);
+        DiscoveryClient client = new DiscoveryClient(new ApplicationInfoManager(instanceConfig, self), config);
+        clients.add(client);
+        return client;
+    }
+
+    static InstanceInfo instance(String app, String id, InstanceInfo.InstanceStatus status) {
+        return InstanceInfo.Builder.newBuilder()
+                .setInstanceId(id)
+                .setAppName(app)
+                .setHostName(id + ".local")
+                .setIPAddr("127.0.0.1")
+                .setPort(8080)
+                .setVIPAddress(app.toLowerCase())
+                .setStatus(status)
+                .setDataCenterInfo(new MyDataCenterInfo(DataCenterInfo.Name.MyOwn))
+                .setLeaseInfo(LeaseInfo.Builder.newBuilder().build())
+                .setLastDirtyTimestamp(System.nanoTime())
+                .build();
+    }
+
+    private static PeerInstance find(AppSnapshot s, String id) {
+        for (int i = 0; i < s.size(); i++) {
+            if (s.get(i).getId().equals(id)) {
+                return s.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (!condition.getAsBoolean()) {
+            assertTrue("condition not met in time", System.nanoTime() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * 只实现客户端拉取用到的 GET /eureka/apps/ 和 GET /eureka/apps/delta. 增量返回上次拉取以来变化的实例
+     */
+    static final class StandInEurekaServer {
+
+        private final HttpServer http;
+
+        private final Map<String, InstanceInfo> instances = new LinkedHashMap<String, InstanceInfo>();
+
+        private final List<InstanceInfo> changes = new ArrayList<InstanceInfo>();
+
+        private long version;
+
+        private int fetches;
+
+        private int deltaFetches;
+
+        StandInEurekaServer() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/eureka/apps/", this::handle);
+            http.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + "/eureka/";
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        synchronized void put(InstanceInfo info) {
+            instances.put(info.getId(), info);
+            changes.add(withAction(info, InstanceInfo.ActionType.ADDED));
+        }
+
+        synchronized void remove(String app, String id) {
+            InstanceInfo info = instances.remove(id);
+            assertNotNull(app + "/" + id, info);
+            changes.add(withAction(info, InstanceInfo.ActionType.DELETED));
+        }
+
+        /**
+         * 等待客户端再拉取若干次
+         */
+        void awaitFetches(int n) throws InterruptedException {
+            final int target;
+            synchronized (this) {
+                target = fetches + n;
+            }
+            awaitTrue(() -> {
+                synchronized (StandInEurekaServer.this) {
+                    return fetches >= target;
+                }
+            });
+        }
+
+        synchronized int getDeltaFetches() {
+            return deltaFetches;
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            byte[] body;
+            synchronized (this) {
+                fetches++;
+                boolean delta = exchange.getRequestURI().getPath().endsWith("/delta");
+                Applications apps = toApplications(delta ? changes : new ArrayList<InstanceInfo>(instances.values()));
+                if (delta) {
+                    changes.clear();
+                    deltaFetches++;
+                }
+                apps.setVersion(++version);
+                apps.setAppsHashCode(toApplications(new ArrayList<InstanceInfo>(instances.values())).getReconcileHashCode());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                EurekaJacksonCodec.getInstance().writeTo(apps, out);
+                body = out.toByteArray();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(body);
+            os.close();
+        }
+
+        private static Applications toApplications(List<InstanceInfo> infos) {
+            Map<String, Application> byName = new LinkedHashMap<String, Application>();
+            for (InstanceInfo info : infos) {
+                Application app = byName.get(info.getAppName());
+                if (app == null) {
+                    app = new Application(info.getAppName());
+                    byName.put(info.getAppName(), app);
+                }
+                app.addInstance(info);
+            }
+            return new Applications(new ArrayList<Application>(byName.values()));
+        }
+
+        private static InstanceInfo withAction(InstanceInfo info, InstanceInfo.ActionType action) {
+            InstanceInfo copy = new InstanceInfo(info);
+            copy.setActionType(action);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.gr.jiang.spring.cloud.dto;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DtoMsgIdTest {
+
+    @After
+    public void cleanUp() {
+        SystemMessageContext.removeCurrentContext();
+        SystemMessageContext root = SystemMessageContext.getRootContext();
+        while (root.getFirstChild() != null) {
+            root.getFirstChild().clear();
+        }
+    }
+
+    @Test
+    public void requestAndResponseShareOneIdWithoutContext() {
+        assertNull(SystemMessageContext.getCurrentContext());
+        IRequestDto request = new IRequestDto();
+        IResponseDto response = new IResponseDto();
+        SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+        assertNotNull(ctx);
+        assertEquals(ctx.getRequestId(), request.getPreMsgId());
+        assertEquals(request.getPreMsgId(), response.getMsgId());
+        assertEquals(request.getPreMsgId(), new IRequestDto().getPreMsgId());
+    }
+
+    @Test
+    public void idsUseTheCurrentContext() {
+        SystemMessageContext ctx = SystemMessageContext.createAndPushContext();
+        IRequestDto request = new IRequestDto();
+        IResponseDto response = new IResponseDto();
+        assertEquals(ctx.getRequestId(), request.getPreMsgId());
+        assertEquals(ctx.getRequestId(), response.getMsgId());
+    }
+
+    @Test
+    public void deserializedDtosKeepTheirIds() throws Exception {
+        SystemMessageContext.createAndPushContext();
+        IRequestDto request = new IRequestDto();
+        IResponseDto response = new IResponseDto();
+        String preMsgId = request.getPreMsgId();
+        String msgId = response.getMsgId();
+        SystemMessageContext.removeCurrentContext();
+
+        IRequestDto requestCopy = roundTrip(request);
+        IResponseDto responseCopy = roundTrip(response);
+        assertEquals(preMsgId, requestCopy.getPreMsgId());
+        assertEquals(msgId, responseCopy.getMsgId());
+        assertNull("读取反序列化的id不应创建Context", SystemMessageContext.getCurrentContext());
+    }
+
+    @Test
+    public void factoryLeavesTheCallerContextAlone() {
+        SystemMessageContext target = SystemMessageContext.createContext(null);
+        List<IResponseDto> list = DtoFactory.of(IResponseDto::new, target).create(3);
+        for (IResponseDto dto : list) {
+            assertEquals(target.getRequestId(), dto.getMsgId());
+        }
+        assertEquals(target.getRequestId(), DtoFactory.of(IRequestDto::new, target).create().getPreMsgId());
+        assertNull(SystemMessageContext.getCurrentContext());
+
+        SystemMessageContext own = SystemMessageContext.createAndPushContext();
+        DtoFactory.of(IRequestDto::new, target).create();
+        assertSame(own, SystemMessageContext.getCurrentContext());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T dto) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(dto);
+        out.close();
+        return (T) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+}
@@ -0,0 +1,95 @@
+package com.gr.jiang.spring.cloud.filter;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.dto.IRequestDto;
+import com.gr.jiang.spring.cloud.dto.IResponseDto;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SystemMessageContextFilterTest {
+
+    private static final int REQUESTS = 1000000;
+
+    /**
+     * 一百万个请求之后根Context没有残留的子节点, 线程上没有残留的Context, 堆内存不随请求数增长
+     */
+    @Test
+    public void millionRequestsKeepMemoryFlat() throws Exception {
+        SystemMessageContextFilter filter = new SystemMessageContextFilter();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/org/detail");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            SystemMessageContext ctx = SystemMessageContext.getCurrentContext();
+            assertNotNull(ctx);
+            ctx.setProperty("org.id", "1");
+            // 请求中压栈而未弹出的Context也应在请求结束时清理
+            SystemMessageContext.createAndPushContext();
+        };
+
+        // 其他测试线程上创建DTO时留下的Context不计在内
+        int children = childCount();
+        long baseline = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            filter.doFilter(request, response, chain);
+            if (i == REQUESTS / 10) {
+                baseline = usedHeap();
+            }
+        }
+        long growth = usedHeap() - baseline;
+
+        assertNull(SystemMessageContext.getCurrentContext());
+        assertEquals(children, childCount());
+        assertTrue("heap grew by " + growth + " bytes", growth < 16L * 1024 * 1024);
+    }
+
+    /**
+     * 调用方通过请求头传入的消息id作为请求DTO的前置消息id, 响应DTO仍使用本服务Context的消息id
+     */
+    @Test
+    public void callerMsgIdBecomesPreMsgId() throws Exception {
+        SystemMessageContextFilter filter = new SystemMessageContextFilter();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/org/detail");
+        request.addHeader(SystemMessageContextFilter.PRE_MSG_ID_HEADER, "caller-0001");
+        final String[] ids = new String[3];
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            ids[0] = new IRequestDto().getPreMsgId();
+            ids[1] = new IResponseDto().getMsgId();
+            ids[2] = SystemMessageContext.getCurrentContext().getRequestId();
+        });
+        assertEquals("caller-0001", ids[0]);
+        assertEquals(ids[2], ids[1]);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/org/detail"), new MockHttpServletResponse(), (req, res) -> {
+            ids[0] = new IRequestDto().getPreMsgId();
+            ids[2] = SystemMessageContext.getCurrentContext().getRequestId();
+        });
+        assertEquals(ids[2], ids[0]);
+    }
+
+    private static int childCount() {
+        int n = 0;
+        for (SystemMessageContext c = SystemMessageContext.getRootContext().getFirstChild(); c != null; c = c.getNextBrother()) {
+            n++;
+        }
+        return n;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
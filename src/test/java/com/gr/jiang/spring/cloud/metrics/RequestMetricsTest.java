@@ -0,0 +1,110 @@
+package com.gr.jiang.spring.cloud.metrics;
+
+import com.gr.jiang.spring.cloud.aop.AdaptiveLimiter;
+import com.gr.jiang.spring.cloud.aop.ICommonServiceAspect;
+import com.gr.jiang.spring.cloud.aop.ServiceBulkheadAdvisor;
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import com.gr.jiang.spring.cloud.service.OrgResultCache;
+import com.gr.jiang.spring.cloud.service.OrgService;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RequestMetricsTest {
+
+    private static final Function<String, OrgResponseDto> LOADER = id -> {
+        OrgResponseDto resDto = new OrgResponseDto();
+        resDto.setResult(id + " result");
+        resDto.setRetCode("0");
+        return resDto;
+    };
+
+    @After
+    public void tearDown() {
+        // 测试线程上创建DTO时压入的Context
+        SystemMessageContext.removeCurrentContext();
+    }
+
+    @Test
+    public void exportsOrgCacheStats() {
+        OrgResultCache cache = new OrgResultCache();
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+        cache.init();
+        cache.get("a", LOADER);
+        cache.get("a", LOADER);
+        cache.get("b", LOADER);
+
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.orgResultCache = cache;
+        String text = scrape(metrics);
+
+        assertThat(text).contains("org_cache_requests_total{result=\"hit\"} 1\n");
+        assertThat(text).contains("org_cache_requests_total{result=\"miss\"} 2\n");
+        assertThat(text).contains("org_cache_evictions_total 0\n");
+        assertThat(text).contains("org_cache_size 2\n");
+        assertThat(text).contains("org_cache_loads_total{outcome=\"executed\"} 2\n");
+        assertThat(text).contains("org_cache_loads_total{outcome=\"coalesced\"} 0\n");
+        assertThat(text).contains("org_cache_load_coalescing_ratio 0.0\n");
+    }
+
+    @Test
+    public void methodQuantileLabelsAreBuiltOnce() throws Exception {
+        Method method = OrgResultCache.class.getMethod("invalidate", String.class);
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000000L);
+        ICommonServiceAspect aspect = mock(ICommonServiceAspect.class);
+        when(aspect.getHistograms()).thenReturn(Collections.singletonMap(method, histogram));
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.serviceAspect = aspect;
+
+        String first = scrape(metrics);
+        Map<?, ?> cached = (Map<?, ?>) ReflectionTestUtils.getField(metrics, "methodLabels");
+        RequestMetrics.SeriesLabels labels = (RequestMetrics.SeriesLabels) cached.get(method);
+        String second = scrape(metrics);
+
+        assertThat(cached.get(method)).isSameAs(labels);
+        assertThat(second).isEqualTo(first);
+        assertThat(first).contains(
+                "service_method_duration_seconds{method=\"OrgResultCache.invalidate\",quantile=\"0.99\"} ");
+        assertThat(first).contains("service_method_duration_seconds_count{method=\"OrgResultCache.invalidate\"} 1\n");
+    }
+
+    /**
+     * service_concurrency_limit 和 service_in_flight 各自成组, 各有自己的 TYPE 行
+     */
+    @Test
+    public void bulkheadGaugesAreSeparateFamilies() {
+        ServiceBulkheadAdvisor bulkhead = new ServiceBulkheadAdvisor();
+        bulkhead.getLimiters().put(OrgService.class, new AdaptiveLimiter(50, 4, 1000));
+        bulkhead.getLimiters().put(OrgResultCache.class, new AdaptiveLimiter(20, 4, 1000));
+        RequestMetrics metrics = new RequestMetrics();
+        ReflectionTestUtils.setField(metrics, "bulkhead", bulkhead);
+
+        String text = scrape(metrics);
+        int limit = text.indexOf("# TYPE service_concurrency_limit gauge\n");
+        int inFlight = text.indexOf("# TYPE service_in_flight gauge\n");
+        assertThat(limit).isGreaterThanOrEqualTo(0);
+        assertThat(inFlight).isGreaterThan(limit);
+        assertThat(text.substring(limit, inFlight)).doesNotContain("service_in_flight{");
+        assertThat(text.substring(inFlight)).doesNotContain("service_concurrency_limit{");
+        assertThat(text.substring(inFlight)).contains("service_in_flight{service=\"OrgService\"} 0\n",
+                "service_in_flight{service=\"OrgResultCache\"} 0\n");
+    }
+
+    private static String scrape(RequestMetrics metrics) {
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        return out.toString();
+    }
+}
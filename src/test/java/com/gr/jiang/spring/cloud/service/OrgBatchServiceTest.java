@@ -0,0 +1,118 @@
+package com.gr.jiang.spring.cloud.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gr.jiang.spring.cloud.config.ContextForkJoinPool;
+import com.gr.jiang.spring.cloud.config.ContextSnapshot;
+import com.gr.jiang.spring.cloud.dto.impl.OrgRequestDto;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrgBatchServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private ContextForkJoinPool pool;
+
+    private OrgBatchService service;
+
+    @Before
+    public void setUp() {
+        pool = new ContextForkJoinPool(4);
+        OrgService orgService = mock(OrgService.class);
+        when(orgService.handle(any(OrgRequestDto.class))).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            Thread.sleep(1);
+            OrgRequestDto reqDto = (OrgRequestDto) invocation.getArguments()[0];
+            OrgResponseDto resDto = new OrgResponseDto();
+            resDto.setResult(reqDto.getId() + " result");
+            return resDto;
+        });
+        service = new OrgBatchService();
+        service.orgService = orgService;
+        service.orgBatchPool = pool;
+        service.objectMapper = objectMapper;
+        service.chunkSize = 4;
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void everyLineCarriesItsId() throws Exception {
+        List<String> ids = ids(50);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream(ids, ContextSnapshot.capture(), out);
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(ids.size(), lines.length);
+        Set<String> seen = new HashSet<String>();
+        for (String json : lines) {
+            Map<?, ?> line = objectMapper.readValue(json, Map.class);
+            String id = (String) line.get("id");
+            assertEquals(id + " result", line.get("result"));
+            seen.add(id);
+        }
+        assertEquals(new HashSet<String>(ids), seen);
+    }
+
+    /**
+     * 客户端断开后不再为剩余的id调用服务
+     */
+    @Test
+    public void disconnectCancelsRemainingChunks() throws Exception {
+        // 大块: 每块需要约1秒, 取消前已开始执行的块也必须停下
+        service.chunkSize = 1000;
+        List<String> ids = ids(10000);
+        OutputStream disconnected = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        try {
+            service.stream(ids, ContextSnapshot.capture(), disconnected);
+            fail("expected the write failure to propagate");
+        } catch (IOException expected) {
+            // 预期
+        }
+        Thread.sleep(200);
+        int afterCancel = calls.get();
+        Thread.sleep(200);
+        assertEquals("service still called after cancel", afterCancel, calls.get());
+        assertTrue("handled " + afterCancel + " of " + ids.size(), afterCancel < ids.size() / 2);
+    }
+
+    private static List<String> ids(int n) {
+        List<String> ids = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add("id-" + i);
+        }
+        return ids;
+    }
+}
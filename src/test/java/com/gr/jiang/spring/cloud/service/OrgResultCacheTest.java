@@ -0,0 +1,144 @@
+package com.gr.jiang.spring.cloud.service;
+
+import com.gr.jiang.spring.cloud.config.SystemMessageContext;
+import com.gr.jiang.spring.cloud.dto.impl.OrgResponseDto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrgResultCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private OrgResultCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new OrgResultCache();
+        cache.ttlSeconds = 60;
+        cache.maxWeight = 1000;
+        cache.init();
+    }
+
+    @After
+    public void tearDown() {
+        // 测试线程上创建DTO时压入的Context
+        SystemMessageContext.removeCurrentContext();
+    }
+
+    /**
+     * 失败结果不缓存, 但同一时刻的并发调用方只加载一次并共享该结果
+     */
+    @Test
+    public void concurrentFailedLoadsAreSharedButNotCached() throws Exception {
+        List<OrgResponseDto> results = concurrently(8, slowLoader("9"));
+        assertEquals(1, loads.get());
+        for (OrgResponseDto resDto : results) {
+            assertEquals("9", resDto.getRetCode());
+        }
+
+        cache.get("x", slowLoader("9"));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void successfulLoadsAreCached() throws Exception {
+        concurrently(8, slowLoader("0"));
+        cache.get("x", slowLoader("0"));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(7, cache.getLoads().getCoalesced());
+    }
+
+    /**
+     * 加载期间的失效不能被随后写入的旧结果覆盖
+     */
+    @Test
+    public void invalidateDuringLoadIsNotLost() throws Exception {
+        assertInvalidatedDuringLoad(() -> cache.invalidate("x"));
+        assertInvalidatedDuringLoad(() -> cache.invalidateAll());
+    }
+
+    private void assertInvalidatedDuringLoad(Runnable invalidation) throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<OrgResponseDto> blocked = pool.submit(() -> cache.get("x", id -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                OrgResponseDto resDto = new OrgResponseDto();
+                resDto.setResult("stale");
+                resDto.setRetCode("0");
+                return resDto;
+            }));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            invalidation.run();
+            release.countDown();
+            assertEquals("stale", blocked.get(10, TimeUnit.SECONDS).getResult());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0, cache.getSize());
+        int before = loads.get();
+        assertEquals("x result", cache.get("x", slowLoader("0")).getResult());
+        assertEquals(before + 1, loads.get());
+        cache.invalidateAll();
+    }
+
+    private List<OrgResponseDto> concurrently(int threads, final Function<String, OrgResponseDto> loader)
+            throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<OrgResponseDto>> futures = new ArrayList<Future<OrgResponseDto>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get("x", loader);
+                }));
+            }
+            start.countDown();
+            List<OrgResponseDto> results = new ArrayList<OrgResponseDto>();
+            for (Future<OrgResponseDto> f : futures) {
+                results.add(f.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Function<String, OrgResponseDto> slowLoader(final String retCode) {
+        return id -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            OrgResponseDto resDto = new OrgResponseDto();
+            resDto.setResult(id + " result");
+            resDto.setRetCode(retCode);
+            return resDto;
+        };
+    }
+}